@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.conditions;
+
+import java.util.Arrays;
+
+/**
+ * Catalog of the OpenWeatherMap condition codes, shared by the phone and the watch.
+ *
+ * Every attribute of a code is read from an array indexed by the code itself, so a lookup costs
+ * the same whatever the code. The apps map the returned indices to their own resources.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ */
+public final class WeatherConditions {
+
+    /**
+     * Returned for codes with no such attribute.
+     */
+    public static final int NONE = -1;
+
+    // Art groups, shared by the icons, the art and the art pack urls
+    public static final int ART_STORM = 0;
+    public static final int ART_LIGHT_RAIN = 1;
+    public static final int ART_RAIN = 2;
+    public static final int ART_SNOW = 3;
+    public static final int ART_FOG = 4;
+    public static final int ART_CLEAR = 5;
+    public static final int ART_LIGHT_CLOUDS = 6;
+    public static final int ART_CLOUDS = 7;
+
+    // Names of the art groups as used by the art pack urls, indexed by art group
+    private static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    // Photos used by Muzei. Raised dust has its own, otherwise they follow the art groups.
+    private static final String[] IMAGE_URLS = {
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg"
+    };
+    private static final int IMAGE_DUST = 8;
+
+    /**
+     * Codes with a description of their own, in the order of the description indices. Every
+     * 2xx code shares the first description and every 3xx code the second, so the indices of
+     * these codes start at {@link #FIRST_SINGLE_DESCRIPTION}.
+     */
+    public static final int[] DESCRIBED_CODES = {
+            500, 501, 502, 503, 504, 511, 520, 531,
+            600, 601, 602, 611, 612, 615, 616, 620, 621, 622,
+            701, 711, 721, 731, 741, 751, 761, 762, 771, 781,
+            800, 801, 802, 803, 804,
+            900, 901, 902, 903, 904, 905, 906,
+            951, 952, 953, 954, 955, 956, 957, 958, 959, 960, 961, 962
+    };
+    public static final int DESCRIPTION_2XX = 0;
+    public static final int DESCRIPTION_3XX = 1;
+    public static final int FIRST_SINGLE_DESCRIPTION = 2;
+
+    /**
+     * Number of description indices, the shared ones included.
+     */
+    public static final int DESCRIPTION_COUNT = FIRST_SINGLE_DESCRIPTION + DESCRIBED_CODES.length;
+
+    private static final int MAX_CODE = 962;
+
+    // Indexed by code. Unknown codes hold NONE.
+    private static final byte[] ART = new byte[MAX_CODE + 1];
+    private static final byte[] IMAGE = new byte[MAX_CODE + 1];
+    private static final byte[] DESCRIPTION = new byte[MAX_CODE + 1];
+
+    static {
+        Arrays.fill(ART, (byte) NONE);
+        Arrays.fill(IMAGE, (byte) NONE);
+        Arrays.fill(DESCRIPTION, (byte) NONE);
+
+        // The first range covering a code wins, 761 is fog and not a storm
+        setArt(200, 232, ART_STORM);
+        setArt(300, 321, ART_LIGHT_RAIN);
+        setArt(500, 504, ART_RAIN);
+        setArt(511, 511, ART_SNOW);
+        setArt(520, 531, ART_RAIN);
+        setArt(600, 622, ART_SNOW);
+        setArt(701, 761, ART_FOG);
+        setArt(781, 781, ART_STORM);
+        setArt(800, 800, ART_CLEAR);
+        setArt(801, 801, ART_LIGHT_CLOUDS);
+        setArt(802, 804, ART_CLOUDS);
+        IMAGE[781] = IMAGE_DUST;
+
+        for (int code = 200; code <= 232; code++) {
+            DESCRIPTION[code] = DESCRIPTION_2XX;
+        }
+        for (int code = 300; code <= 321; code++) {
+            DESCRIPTION[code] = DESCRIPTION_3XX;
+        }
+        for (int i = 0; i < DESCRIBED_CODES.length; i++) {
+            DESCRIPTION[DESCRIBED_CODES[i]] = (byte) (FIRST_SINGLE_DESCRIPTION + i);
+        }
+    }
+
+    private WeatherConditions() {
+    }
+
+    private static void setArt(int fromCode, int toCode, int art) {
+        for (int code = fromCode; code <= toCode; code++) {
+            if (ART[code] == NONE) {
+                ART[code] = (byte) art;
+                IMAGE[code] = (byte) art;
+            }
+        }
+    }
+
+    private static boolean isKnown(int weatherId) {
+        return weatherId >= 0 && weatherId <= MAX_CODE;
+    }
+
+    /**
+     * @return the art group of the condition, one of the ART_ constants, or {@link #NONE}
+     */
+    public static int getArt(int weatherId) {
+        return isKnown(weatherId) ? ART[weatherId] : NONE;
+    }
+
+    /**
+     * @return the name of the art group in the art pack urls, or null if there is none
+     */
+    public static String getArtName(int weatherId) {
+        int art = getArt(weatherId);
+        return art == NONE ? null : ART_NAMES[art];
+    }
+
+    /**
+     * @return the url of a photo of the condition, or null if there is none
+     */
+    public static String getImageUrl(int weatherId) {
+        int image = isKnown(weatherId) ? IMAGE[weatherId] : NONE;
+        return image == NONE ? null : IMAGE_URLS[image];
+    }
+
+    /**
+     * @return the index of the condition's description, below {@link #DESCRIPTION_COUNT}, or
+     * {@link #NONE} for unknown conditions
+     */
+    public static int getDescription(int weatherId) {
+        return isKnown(weatherId) ? DESCRIPTION[weatherId] : NONE;
+    }
+}
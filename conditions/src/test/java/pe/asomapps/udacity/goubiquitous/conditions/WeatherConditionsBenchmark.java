@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.conditions;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolves every attribute of a spread of condition codes through the catalog and through the
+ * old range checks. Run with ./gradlew :conditions:benchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WeatherConditionsBenchmark {
+
+    // Common codes first, then the ones at the end of the old chains
+    private final int[] mCodes = {800, 801, 803, 500, 211, 301, 601, 741, 781, 804, 962, 999};
+
+    @Benchmark
+    public void catalog(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(WeatherConditions.getArtName(code));
+            blackhole.consume(WeatherConditions.getImageUrl(code));
+            blackhole.consume(WeatherConditions.getDescription(code));
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        for (int code : mCodes) {
+            blackhole.consume(LegacyWeatherConditions.getArtName(code));
+            blackhole.consume(LegacyWeatherConditions.getImageUrl(code));
+            blackhole.consume(LegacyWeatherConditions.getDescriptionName(code));
+        }
+    }
+}
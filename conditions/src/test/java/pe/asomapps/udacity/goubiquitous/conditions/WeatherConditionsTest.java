@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.conditions;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherConditionsTest {
+
+    // Well past the codes in use on both sides, negative ones included
+    private static final int FIRST_CODE = -1000;
+    private static final int LAST_CODE = 2000;
+
+    private static String getDescriptionName(int weatherId) {
+        int description = WeatherConditions.getDescription(weatherId);
+        if (description == WeatherConditions.NONE) {
+            return null;
+        } else if (description == WeatherConditions.DESCRIPTION_2XX) {
+            return "2xx";
+        } else if (description == WeatherConditions.DESCRIPTION_3XX) {
+            return "3xx";
+        }
+        return Integer.toString(WeatherConditions.DESCRIBED_CODES[
+                description - WeatherConditions.FIRST_SINGLE_DESCRIPTION]);
+    }
+
+    @Test
+    public void artMatchesLegacy() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Art of " + code,
+                    LegacyWeatherConditions.getArtName(code), WeatherConditions.getArtName(code));
+        }
+    }
+
+    @Test
+    public void imageUrlMatchesLegacy() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Image of " + code,
+                    LegacyWeatherConditions.getImageUrl(code), WeatherConditions.getImageUrl(code));
+        }
+    }
+
+    @Test
+    public void descriptionMatchesLegacy() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            assertEquals("Description of " + code,
+                    LegacyWeatherConditions.getDescriptionName(code), getDescriptionName(code));
+        }
+    }
+
+    @Test
+    public void indicesAreInRange() {
+        for (int code = FIRST_CODE; code <= LAST_CODE; code++) {
+            int art = WeatherConditions.getArt(code);
+            assertTrue(art == WeatherConditions.NONE
+                    || (art >= WeatherConditions.ART_STORM && art <= WeatherConditions.ART_CLOUDS));
+            assertTrue(WeatherConditions.getDescription(code) < WeatherConditions.DESCRIPTION_COUNT);
+        }
+    }
+}
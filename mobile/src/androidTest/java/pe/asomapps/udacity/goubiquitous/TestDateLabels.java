@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.test.AndroidTestCase;
+
+import java.text.SimpleDateFormat;
+
+/*
+    Checks the cached date labels against formatting each one from scratch.
+ */
+public class TestDateLabels extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int DAYS = 14;
+
+    public void testLabelsMatchFormatting() {
+        DateLabels labels = DateLabels.getInstance(mContext);
+        long today = System.currentTimeMillis();
+
+        assertEquals(mContext.getString(R.string.today), labels.getDayName(today));
+        assertEquals(mContext.getString(R.string.tomorrow), labels.getDayName(today + DAY_IN_MILLIS));
+        assertEquals(mContext.getString(R.string.format_full_friendly_date,
+                mContext.getString(R.string.today),
+                new SimpleDateFormat("MMMM dd").format(today)),
+                labels.getFriendlyDayString(today, true));
+
+        for (int i = 2; i < DAYS; i++) {
+            long date = today + i * DAY_IN_MILLIS;
+            String expected = i < 7 ? new SimpleDateFormat("EEEE").format(date)
+                    : new SimpleDateFormat("EEE MMM dd").format(date);
+            assertEquals(expected, labels.getFriendlyDayString(date, false));
+            assertEquals(new SimpleDateFormat("MMMM dd").format(date),
+                    labels.getFormattedMonthDay(date));
+        }
+    }
+
+    public void testLabelsAreReused() {
+        DateLabels labels = DateLabels.getInstance(mContext);
+        long date = System.currentTimeMillis() + 10 * DAY_IN_MILLIS;
+
+        String label = labels.getFriendlyDayString(date, false);
+        assertSame("The label of a day should be built once",
+                label, labels.getFriendlyDayString(date, false));
+
+        labels.invalidate();
+        String rebuilt = labels.getFriendlyDayString(date, false);
+        assertNotSame("The labels should be rebuilt after an invalidation", label, rebuilt);
+        assertEquals(label, rebuilt);
+    }
+}
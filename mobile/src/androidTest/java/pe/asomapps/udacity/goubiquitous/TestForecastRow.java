@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks the precomputed list rows against the formatting the adapter used to do on every
+    bind, and measures both over a number of simulated scrolls through the list.
+ */
+public class TestForecastRow extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRow.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int SCROLLS = 50;
+
+    private MatrixCursor createForecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        long today = System.currentTimeMillis();
+        for (int i = 0; i < DAYS; i++) {
+            cursor.addRow(new Object[]{i, today + i * 24L * 60 * 60 * 1000, "Clear",
+                    20.5 + i, 10.25 - i, "99705", 800 - i * 50, 64.7488, -147.353});
+        }
+        return cursor;
+    }
+
+    public void testRowsMatchBindFormatting() {
+        MatrixCursor cursor = createForecastCursor();
+        ForecastRow[] rows = ForecastRow.fromCursorRows(mContext, cursor);
+        assertEquals(DAYS, rows.length);
+
+        for (int i = 0; i < DAYS; i++) {
+            cursor.moveToPosition(i);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            assertEquals(date, rows[i].date);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false), rows[i].dateLabel);
+            assertEquals(Utility.getFriendlyDayString(mContext, date, true), rows[i].todayDateLabel);
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), rows[i].iconResId);
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), rows[i].artResId);
+            assertEquals(Utility.getStringForWeatherCondition(mContext, weatherId), rows[i].description);
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP)), rows[i].high);
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP)), rows[i].low);
+        }
+        cursor.close();
+    }
+
+    public void testBenchmarkBind() {
+        MatrixCursor cursor = createForecastCursor();
+
+        // What every bind used to cost
+        long start = System.nanoTime();
+        for (int scroll = 0; scroll < SCROLLS; scroll++) {
+            for (int i = 0; i < DAYS; i++) {
+                cursor.moveToPosition(i);
+                ForecastRow.fromCursor(mContext, cursor);
+            }
+        }
+        long formatNanos = System.nanoTime() - start;
+
+        // Formatting once, then reading the fields
+        start = System.nanoTime();
+        ForecastRow[] rows = ForecastRow.fromCursorRows(mContext, cursor);
+        int length = 0;
+        for (int scroll = 0; scroll < SCROLLS; scroll++) {
+            for (ForecastRow row : rows) {
+                length += row.dateLabel.length() + row.description.length();
+            }
+        }
+        long rowNanos = System.nanoTime() - start;
+        cursor.close();
+
+        Log.i(LOG_TAG, SCROLLS + " scrolls over " + DAYS + " days: formatting on bind "
+                + formatNanos / 1000 + "us, precomputed rows " + rowNanos / 1000 + "us ("
+                + length + " chars)");
+        assertTrue("Error: the precomputed rows were not faster", rowNanos < formatNanos);
+    }
+}
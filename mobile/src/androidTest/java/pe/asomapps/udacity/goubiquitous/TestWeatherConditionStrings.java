@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.test.AndroidTestCase;
+
+import pe.asomapps.udacity.goubiquitous.conditions.WeatherConditions;
+
+/*
+    The condition strings are indexed by the catalog's description indices, make sure every code
+    still reads its own condition_ string.
+ */
+public class TestWeatherConditionStrings extends AndroidTestCase {
+
+    private String getConditionString(String suffix) {
+        int stringId = mContext.getResources().getIdentifier("condition_" + suffix, "string",
+                mContext.getPackageName());
+        assertTrue("Error: there is no string condition_" + suffix, stringId != 0);
+        return mContext.getString(stringId);
+    }
+
+    public void testConditionStrings() {
+        assertEquals(getConditionString("2xx"), Utility.getStringForWeatherCondition(mContext, 211));
+        assertEquals(getConditionString("3xx"), Utility.getStringForWeatherCondition(mContext, 310));
+        for (int code : WeatherConditions.DESCRIBED_CODES) {
+            assertEquals("Error: wrong string for " + code, getConditionString(Integer.toString(code)),
+                    Utility.getStringForWeatherCondition(mContext, code));
+        }
+        assertEquals(mContext.getString(R.string.condition_unknown, 999),
+                Utility.getStringForWeatherCondition(mContext, 999));
+    }
+}
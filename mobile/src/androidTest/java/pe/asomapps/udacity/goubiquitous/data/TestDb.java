@@ -176,6 +176,41 @@ public class TestDb extends AndroidTestCase {
         dbHelper.close();
     }
 
+    /*
+        Upgrading from version 2 must keep the stored forecast and add the location/date index.
+     */
+    public void testUpgradeKeepsData() {
+        long locationRowId = insertLocation();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+
+        // Turn it back into a version 2 database, which had no index
+        db.execSQL("DROP INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX);
+        db.setVersion(2);
+        dbHelper.close();
+
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getReadableDatabase();
+
+        Cursor weatherCursor = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                null, null, null, null, null, null);
+        assertTrue("Error: The weather was lost in the upgrade", weatherCursor.moveToFirst());
+        TestUtilities.validateCurrentRecord("Error: The weather changed in the upgrade",
+                weatherCursor, weatherValues);
+        weatherCursor.close();
+
+        Cursor indexCursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type='index' AND name = ?",
+                new String[]{WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX});
+        assertTrue("Error: The upgrade didn't create the location/date index",
+                indexCursor.moveToFirst());
+        indexCursor.close();
+        dbHelper.close();
+    }
+
 
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
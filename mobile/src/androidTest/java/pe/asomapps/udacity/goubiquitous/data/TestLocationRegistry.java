@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+public class TestLocationRegistry extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    /*
+        The table is read once, and an insert through the provider makes the next lookup read it
+        again and find the new location.
+     */
+    public void testLoadOnceAndInvalidate() {
+        LocationRegistry registry = LocationRegistry.getInstance();
+        int loads = registry.getLoadCount();
+        assertEquals(-1, registry.getLocationId(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(-1, registry.getLocationId(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(loads + 1, registry.getLoadCount());
+
+        Uri locationUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        assertEquals("Error: the registry missed the inserted location",
+                locationRowId, registry.getLocationId(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(locationRowId, registry.getLocationId(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(loads + 2, registry.getLoadCount());
+    }
+
+    /*
+        Inserting a location that is already stored returns its row, so two syncs adding the same
+        new location don't fail or duplicate it.
+     */
+    public void testInsertOrGet() {
+        Uri firstUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+
+        ContentValues sameLocation = TestUtilities.createNorthPoleLocationValues();
+        sameLocation.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Santa's Village");
+        Uri secondUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, sameLocation);
+
+        assertEquals("Error: inserting a stored location returned another row",
+                ContentUris.parseId(firstUri), ContentUris.parseId(secondUri));
+        assertEquals(ContentUris.parseId(firstUri), LocationRegistry.getInstance()
+                .getLocationId(mContext, TestUtilities.TEST_LOCATION));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+/*
+    Measures the queries the provider runs over a database holding a year of history for 50
+    locations, with and without the location/date index.
+ */
+public class TestQueryBenchmark extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryBenchmark.class.getSimpleName();
+
+    private static final int LOCATIONS = 50;
+    private static final int DAYS = 365;
+    private static final int ROUNDS = 100;
+    private static final int START_DAY = 2457000;
+
+    // Same join and selections as WeatherProvider
+    private static final String TABLES = WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN " +
+            WeatherContract.LocationEntry.TABLE_NAME +
+            " ON " + WeatherContract.WeatherEntry.TABLE_NAME +
+            "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
+            " = " + WeatherContract.LocationEntry.TABLE_NAME +
+            "." + WeatherContract.LocationEntry._ID;
+    private static final String WITH_START_DATE_SELECTION =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+    private static final String AND_DAY_SELECTION =
+            WeatherContract.LocationEntry.TABLE_NAME +
+                    "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    private SQLiteDatabase mDb;
+    private final Time mDayTime = new Time();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // In memory, so the measure is about the query plans and not the storage
+        mDb = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(mDb);
+
+        mDb.beginTransaction();
+        try {
+            ContentValues locationValues = new ContentValues();
+            ContentValues weatherValues = new ContentValues();
+            for (int location = 0; location < LOCATIONS; location++) {
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "location-" + location);
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "City " + location);
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, location);
+                locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -location);
+                long locationId = mDb.insert(WeatherContract.LocationEntry.TABLE_NAME, null, locationValues);
+
+                for (int day = 0; day < DAYS; day++) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, mDayTime.setJulianDay(START_DAY + day));
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 321);
+                    mDb.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            mDb.endTransaction();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDb.close();
+        super.tearDown();
+    }
+
+    public void testBenchmarkQueries() {
+        long indexedStartDate = timeQuery(WITH_START_DATE_SELECTION);
+        long indexedDay = timeQuery(AND_DAY_SELECTION);
+
+        mDb.execSQL("DROP INDEX " + WeatherDbHelper.WEATHER_LOCATION_DATE_INDEX);
+        long plainStartDate = timeQuery(WITH_START_DATE_SELECTION);
+        long plainDay = timeQuery(AND_DAY_SELECTION);
+
+        Log.i(LOG_TAG, "Per query, location from a date: " + plainStartDate / ROUNDS + "ns without index, "
+                + indexedStartDate / ROUNDS + "ns with it. Location and day: "
+                + plainDay / ROUNDS + "ns without index, " + indexedDay / ROUNDS + "ns with it");
+    }
+
+    // Reads the last two weeks of the year, as the forecast list does
+    private long timeQuery(String selection) {
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(TABLES);
+        String date = Long.toString(mDayTime.setJulianDay(START_DAY + DAYS - 14));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            Cursor cursor = builder.query(mDb, null, selection,
+                    new String[]{"location-" + (i % LOCATIONS), date}, null, null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            assertTrue(cursor.getCount() > 0);
+            cursor.close();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.data;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+public class TestTodayForecastCache extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    /*
+        The second lookup is served from memory, and a write through the provider makes the
+        next one go back to the database.
+     */
+    public void testReadThroughAndInvalidate() {
+        TodayForecastCache cache = TodayForecastCache.getInstance();
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, System.currentTimeMillis());
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI, weatherValues);
+
+        int hits = cache.getHitCount();
+        int misses = cache.getMissCount();
+        TodayForecastCache.TodayForecast today = cache.get(mContext, TestUtilities.TEST_LOCATION);
+        assertNotNull("Error: today's forecast was not found", today);
+        assertEquals(321, today.weatherId);
+        assertEquals(misses + 1, cache.getMissCount());
+
+        assertSame(today, cache.get(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(hits + 1, cache.getHitCount());
+
+        ContentValues updatedValues = new ContentValues(weatherValues);
+        updatedValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800);
+        mContext.getContentResolver().update(WeatherContract.WeatherEntry.CONTENT_URI,
+                updatedValues, null, null);
+
+        today = cache.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals(misses + 2, cache.getMissCount());
+        assertEquals("Error: the cache returned the forecast from before the update",
+                800, today.weatherId);
+    }
+
+    public void testMissingDayIsCached() {
+        TodayForecastCache cache = TodayForecastCache.getInstance();
+        cache.invalidate();
+        TestUtilities.insertNorthPoleLocationValues(mContext);
+
+        int misses = cache.getMissCount();
+        assertNull(cache.get(mContext, TestUtilities.TEST_LOCATION));
+        assertNull(cache.get(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    public void testPutAfterAnotherWriteIsDropped() {
+        TodayForecastCache cache = TodayForecastCache.getInstance();
+        TodayForecastCache.TodayForecast forecast =
+                new TodayForecastCache.TodayForecast(0, 800, "Clear", 20, 10);
+        int julianDay = getCurrentJulianDay();
+
+        int generation = cache.getGeneration();
+        cache.invalidate();
+        cache.put(TestUtilities.TEST_LOCATION, julianDay, forecast, generation);
+        assertSame("Error: the forecast of the write was not stored",
+                forecast, cache.get(mContext, TestUtilities.TEST_LOCATION));
+
+        // Another write lands between ours and the put
+        generation = cache.getGeneration();
+        cache.invalidate();
+        cache.invalidate();
+        cache.put(TestUtilities.TEST_LOCATION, julianDay, forecast, generation);
+        assertNotSame("Error: a stale forecast was stored",
+                forecast, cache.get(mContext, TestUtilities.TEST_LOCATION));
+    }
+
+    private static int getCurrentJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
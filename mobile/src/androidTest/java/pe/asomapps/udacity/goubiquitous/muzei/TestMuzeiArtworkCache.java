@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.muzei;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import pe.asomapps.udacity.goubiquitous.sync.StandInServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+public class TestMuzeiArtworkCache extends AndroidTestCase {
+
+    private static final int TARGET_SIZE = 500;
+
+    private File mDirectory;
+    private SharedPreferences mPrefs;
+    private StandInServer mServer;
+    private byte[] mImage;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The provider serves the real directory
+        mDirectory = MuzeiArtworkCache.getDirectory(mContext);
+        deleteFiles();
+        mPrefs = mContext.getSharedPreferences("test_muzei_artwork", Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        mImage = createLargeJpeg();
+        mServer = new StandInServer();
+        mServer.body = mImage;
+        mServer.contentType = "image/jpeg";
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteFiles();
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    /*
+        The image is downloaded once, stored just covering the target size and served by the
+        provider. Asking for it again doesn't touch the network and counts the original as saved.
+     */
+    public void testDownloadOnceAndDownscale() throws IOException {
+        MuzeiArtworkCache cache = new MuzeiArtworkCache(mDirectory, mPrefs, TARGET_SIZE);
+        String imageUrl = mServer.getFileUrl("storm.jpg");
+
+        Uri artworkUri = cache.getArtworkUri(imageUrl);
+        assertNotNull("Error: the image was not stored", artworkUri);
+        assertEquals(MuzeiArtworkProvider.AUTHORITY, artworkUri.getAuthority());
+        assertEquals(1, mServer.requestCount);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(mImage.length, cache.getBytesDownloaded());
+
+        InputStream in = mContext.getContentResolver().openInputStream(artworkUri);
+        byte[] stored = readFully(in);
+        assertTrue("Error: the stored image is not smaller than the original",
+                stored.length < mImage.length);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(stored, 0, stored.length, options);
+        assertEquals("Error: the stored image does not just cover the target size",
+                TARGET_SIZE, Math.min(options.outWidth, options.outHeight));
+
+        assertEquals(artworkUri, cache.getArtworkUri(imageUrl));
+        assertEquals("Error: the image was downloaded again", 1, mServer.requestCount);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(mImage.length, cache.getBytesSaved());
+
+        // Another cache over the same directory, as the next Muzei update would create
+        MuzeiArtworkCache nextCache = new MuzeiArtworkCache(mDirectory, mPrefs, TARGET_SIZE);
+        assertEquals(artworkUri, nextCache.getArtworkUri(imageUrl));
+        assertEquals(1, mServer.requestCount);
+        assertEquals(2, nextCache.getHitCount());
+    }
+
+    public void testFailedDownload() {
+        MuzeiArtworkCache cache = new MuzeiArtworkCache(mDirectory, mPrefs, TARGET_SIZE);
+        // Nothing to serve, the server answers 404
+        mServer.body = null;
+        assertNull(cache.getArtworkUri(mServer.getFileUrl("missing.jpg")));
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getBytesDownloaded());
+    }
+
+    private void deleteFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    /*
+        Noise doesn't compress, so the JPEG is as large as the originals Muzei used to download.
+     */
+    private static byte[] createLargeJpeg() {
+        int width = 2000;
+        int height = 1500;
+        int[] pixels = new int[width * height];
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0xffffff);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(pixels, width, height, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8 * 1024];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
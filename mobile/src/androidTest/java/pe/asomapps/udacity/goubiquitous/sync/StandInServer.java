@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+
+/*
+    Minimal HTTP/1.0 stand-in for OpenWeatherMap. Every request is answered with the current
+    forecast, or with a 304 when it carries the ETag of that forecast and ETags are enabled.
+    Each connection is served on its own thread, after the configured latency, so concurrent
+    requests overlap like they would against the real service.
+
+    It stands in for other servers too: when raw bytes are set they are served instead, with
+    their content type, and with neither those nor a forecast every request gets a 404.
+ */
+public class StandInServer extends Thread {
+    static final String ETAG = "\"forecast-1\"";
+
+    private final ServerSocket mServerSocket;
+
+    volatile String forecast;
+    volatile boolean sendETag = true;
+    // Adds the request number to every body, so no two responses are ever identical
+    volatile boolean varyBody;
+    volatile int latencyMillis;
+
+    // Served as they are instead of the forecast, when set
+    public volatile byte[] body;
+    public volatile String contentType = "application/octet-stream";
+
+    public volatile int requestCount;
+    public volatile int bodyBytes;
+    volatile String lastIfNoneMatch;
+
+    public StandInServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        start();
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/forecast?";
+    }
+
+    URL getUrl(String query) throws IOException {
+        return new URL(getBaseUrl() + "q=" + query);
+    }
+
+    /**
+     * @return the URL of a file on the server, which only matters in the log as every path
+     * gets the same answer
+     */
+    public String getFileUrl(String name) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/" + name;
+    }
+
+    @Override
+    public void run() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            handle(socket);
+                        } catch (IOException | InterruptedException e) {
+                            // the client went away
+                        } finally {
+                            try {
+                                socket.close();
+                            } catch (IOException e) {
+                                // nothing left to do
+                            }
+                        }
+                    }
+                }.start();
+            } catch (IOException e) {
+                // closed by shutdown()
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+        String ifNoneMatch = null;
+        String line;
+        while ((line = in.readLine()) != null && line.length() > 0) {
+            if (line.toLowerCase().startsWith("if-none-match:")) {
+                ifNoneMatch = line.substring("if-none-match:".length()).trim();
+            }
+        }
+        int requestNumber = countRequest(ifNoneMatch);
+        if (latencyMillis > 0) {
+            Thread.sleep(latencyMillis);
+        }
+
+        OutputStream out = socket.getOutputStream();
+        byte[] rawBody = body;
+        if (rawBody != null) {
+            String headers = "HTTP/1.0 200 OK\r\nContent-Type: " + contentType + "\r\n"
+                    + "Content-Length: " + rawBody.length + "\r\nConnection: close\r\n\r\n";
+            countBytes(rawBody.length);
+            out.write(headers.getBytes("UTF-8"));
+            out.write(rawBody);
+        } else if (forecast == null) {
+            out.write("HTTP/1.0 404 Not Found\r\nConnection: close\r\n\r\n".getBytes("UTF-8"));
+        } else if (sendETag && ETAG.equals(ifNoneMatch)) {
+            out.write("HTTP/1.0 304 Not Modified\r\nConnection: close\r\n\r\n".getBytes("UTF-8"));
+        } else {
+            String json = forecast;
+            if (varyBody) {
+                json = json.replaceFirst("\"message\":[^,]*,", "\"message\":" + requestNumber + ",");
+            }
+            byte[] body = json.getBytes("UTF-8");
+            String headers = "HTTP/1.0 200 OK\r\nContent-Type: application/json\r\n"
+                    + (sendETag && !varyBody ? "ETag: " + ETAG + "\r\n" : "")
+                    + "Content-Length: " + body.length + "\r\nConnection: close\r\n\r\n";
+            // Counted first, the client may be done reading before we get back here
+            countBytes(body.length);
+            out.write(headers.getBytes("UTF-8"));
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    private synchronized int countRequest(String ifNoneMatch) {
+        lastIfNoneMatch = ifNoneMatch;
+        return ++requestCount;
+    }
+
+    private synchronized void countBytes(int count) {
+        bodyBytes += count;
+    }
+
+    public void shutdown() throws IOException {
+        mServerSocket.close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+    Replays a synthetic day of OpenWeatherMap responses against a sync schedule, counting the
+    requests made and how long forecast changes took to reach the device. Times are in seconds
+    from midnight, and the same seed always gives the same day.
+ */
+class SyncSimulation {
+
+    static final int HOUR = 60 * 60;
+    static final int DAY = 24 * HOUR;
+
+    static class Result {
+        int requests;
+        int serverDownResponses;
+        // Sum over every forecast change of the time until a sync picked it up
+        long staleSeconds;
+        int changes;
+
+        long getMeanStaleMinutes() {
+            return changes == 0 ? 0 : staleSeconds / changes / 60;
+        }
+
+        @Override
+        public String toString() {
+            return requests + " requests (" + serverDownResponses + " failed), "
+                    + changes + " changes, " + getMeanStaleMinutes() + " min mean staleness";
+        }
+    }
+
+    // Times at which the server starts returning a new forecast, sorted
+    private final int[] mChangeTimes;
+    private final int mOutageStart;
+    private final int mOutageEnd;
+    private final int mAlertTime;
+
+    SyncSimulation(int[] changeTimes, int outageStart, int outageEnd, int alertTime) {
+        mChangeTimes = changeTimes;
+        mOutageStart = outageStart;
+        mOutageEnd = outageEnd;
+        mAlertTime = alertTime;
+    }
+
+    /**
+     * A quiet night, a volatile morning, a server outage in the afternoon and a storm announced
+     * by a weather alert in the evening.
+     */
+    static SyncSimulation createDay(long seed) {
+        Random random = new Random(seed);
+        List<Integer> changes = new ArrayList<Integer>();
+        addChanges(changes, random, 0, 6 * HOUR, 3 * HOUR, 5 * HOUR);
+        addChanges(changes, random, 6 * HOUR, 10 * HOUR, HOUR / 4, 3 * HOUR / 4);
+        addChanges(changes, random, 10 * HOUR, 18 * HOUR, 2 * HOUR, 4 * HOUR);
+        addChanges(changes, random, 18 * HOUR, 20 * HOUR, HOUR / 6, HOUR / 2);
+        addChanges(changes, random, 20 * HOUR, DAY, 3 * HOUR, 5 * HOUR);
+        return new SyncSimulation(toArray(changes), 14 * HOUR, 16 * HOUR + HOUR / 2, 18 * HOUR);
+    }
+
+    /**
+     * A forecast changing every few hours, without outages nor alerts.
+     */
+    static SyncSimulation createQuietDay(long seed) {
+        Random random = new Random(seed);
+        List<Integer> changes = new ArrayList<Integer>();
+        addChanges(changes, random, 0, DAY, 3 * HOUR, 6 * HOUR);
+        return new SyncSimulation(toArray(changes), 0, 0, DAY);
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static void addChanges(List<Integer> changes, Random random, int from, int to,
+                                   int minGap, int maxGap) {
+        int time = from + minGap + random.nextInt(maxGap - minGap);
+        while (time < to) {
+            changes.add(time);
+            time += minGap + random.nextInt(maxGap - minGap);
+        }
+    }
+
+    /**
+     * Syncs every {@code interval} seconds, whatever happens.
+     */
+    Result runFixed(int interval) {
+        return run(null, interval);
+    }
+
+    /**
+     * Syncs at the intervals picked by the scheduler. A new interval restarts the period, like
+     * replacing the periodic sync does.
+     */
+    Result runAdaptive(SyncScheduler scheduler) {
+        return run(scheduler, scheduler.getInterval());
+    }
+
+    private Result run(SyncScheduler scheduler, int interval) {
+        Result result = new Result();
+        result.changes = mChangeTimes.length;
+        // Number of changes the device has, it starts the day up to date
+        int deviceVersion = 0;
+        boolean alerted = false;
+
+        int time = interval;
+        while (time < DAY) {
+            if (scheduler != null && !alerted && mAlertTime <= time) {
+                alerted = true;
+                time = mAlertTime + scheduler.onAlert();
+                continue;
+            }
+
+            result.requests++;
+            int status;
+            boolean changed = false;
+            if (time >= mOutageStart && time < mOutageEnd) {
+                status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+                result.serverDownResponses++;
+            } else {
+                status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                int serverVersion = getServerVersion(time);
+                for (int i = deviceVersion; i < serverVersion; i++) {
+                    result.staleSeconds += time - mChangeTimes[i];
+                }
+                changed = serverVersion > deviceVersion;
+                deviceVersion = serverVersion;
+            }
+
+            if (scheduler != null) {
+                interval = scheduler.onSyncFinished(status, changed);
+            }
+            time += interval;
+        }
+
+        // Changes still missing at the end of the day
+        for (int i = deviceVersion; i < mChangeTimes.length; i++) {
+            result.staleSeconds += DAY - mChangeTimes[i];
+        }
+        return result;
+    }
+
+    private int getServerVersion(int time) {
+        int version = 0;
+        while (version < mChangeTimes.length && mChangeTimes[version] <= time) {
+            version++;
+        }
+        return version;
+    }
+}
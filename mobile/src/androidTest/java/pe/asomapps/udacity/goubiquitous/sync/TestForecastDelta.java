@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import org.json.JSONException;
+
+public class TestForecastDelta extends AndroidTestCase {
+
+    private static final int JULIAN_DAY = 2457000;
+
+    public void testParse() throws JSONException {
+        ForecastDelta delta = ForecastDelta.parse("{\"location\":\"99705\",\"days\":["
+                + "{\"date\":" + JULIAN_DAY + ",\"id\":800,\"main\":\"Clear\",\"max\":21.5,"
+                + "\"min\":10.1,\"humidity\":60,\"pressure\":1012.2,\"speed\":3.1,\"deg\":270}]}");
+
+        assertEquals("99705", delta.locationSetting);
+        assertEquals(1, delta.days.size());
+        ContentValues day = delta.days.get(0);
+        assertEquals(new Time().setJulianDay(JULIAN_DAY),
+                (long) day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+        assertEquals(800, (int) day.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals("Clear", day.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+        assertEquals(21.5, day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals(10.1, day.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        assertNull("The location key is only known once stored",
+                day.get(WeatherContract.WeatherEntry.COLUMN_LOC_KEY));
+    }
+
+    public void testRejectsIncompleteDays() {
+        try {
+            ForecastDelta.parse("{\"location\":\"99705\",\"days\":[{\"date\":" + JULIAN_DAY + "}]}");
+            fail("A day without values should be rejected");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.ContentValues;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract.WeatherEntry;
+
+import java.util.Vector;
+
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final int START_DAY = 2457000;
+    private static final int DAYS = 3;
+
+    private final Time mDayTime = new Time();
+
+    private ContentValues createDay(int dayIndex) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, mDayTime.setJulianDay(START_DAY + dayIndex));
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, 5 + dayIndex * 0.1);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 20.25);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, 60);
+        values.put(WeatherEntry.COLUMN_PRESSURE, 1012.5);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, 3.1 + dayIndex * 0.1);
+        values.put(WeatherEntry.COLUMN_DEGREES, 180.0);
+        return values;
+    }
+
+    private Vector<ContentValues> createForecast() {
+        Vector<ContentValues> forecast = new Vector<ContentValues>(DAYS);
+        for (int i = 0; i < DAYS; i++) {
+            forecast.add(createDay(i));
+        }
+        return forecast;
+    }
+
+    // Stores the values the way SQLite hands them back
+    private static MatrixCursor createStoredRows(Vector<ContentValues> forecast) {
+        MatrixCursor cursor = new MatrixCursor(ForecastDiff.PROJECTION);
+        for (ContentValues values : forecast) {
+            Object[] row = new Object[ForecastDiff.PROJECTION.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = values.get(ForecastDiff.PROJECTION[i]);
+            }
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    public void testUnchangedForecast() {
+        Vector<ContentValues> stored = createForecast();
+        ForecastDiff diff = ForecastDiff.compute(createStoredRows(stored), createForecast());
+
+        assertTrue("Error: an identical forecast should not write anything",
+                diff.changedValues.isEmpty());
+        assertEquals(0, diff.changedDates.length);
+    }
+
+    public void testChangedAndNewDays() {
+        Vector<ContentValues> stored = createForecast();
+        stored.remove(DAYS - 1);
+
+        Vector<ContentValues> parsed = createForecast();
+        parsed.get(1).put(WeatherEntry.COLUMN_MAX_TEMP, 21.0);
+
+        ForecastDiff diff = ForecastDiff.compute(createStoredRows(stored), parsed);
+
+        assertEquals("Error: only the changed and the new day should be written",
+                2, diff.changedValues.size());
+        assertSame(parsed.get(1), diff.changedValues.get(0));
+        assertSame(parsed.get(2), diff.changedValues.get(1));
+        assertFalse(diff.isDateChanged(mDayTime.setJulianDay(START_DAY)));
+        assertTrue(diff.isDateChanged(mDayTime.setJulianDay(START_DAY + 1)));
+        assertTrue(diff.isDateChanged(mDayTime.setJulianDay(START_DAY + 2)));
+    }
+
+    public void testNothingStored() {
+        ForecastDiff diff = ForecastDiff.compute(null, createForecast());
+        assertEquals(DAYS, diff.changedValues.size());
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Checks that the streaming ForecastParser reads the same values the org.json based parsing
+    did, and compares both approaches on 14 and 16 day payloads.
+ */
+public class TestForecastParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastParser.class.getSimpleName();
+
+    private static final int BENCHMARK_ROUNDS = 200;
+
+    /*
+        Builds a payload shaped like the OWM forecast/daily response, including the fields we
+        don't read, so the parser also has to skip them.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0123,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1419120000L + i * 86400L)
+                    .append(",\"temp\":{\"day\":15.2,\"min\":").append(5 + i * 0.5)
+                    .append(",\"max\":").append(20 + i * 0.25)
+                    .append(",\"night\":7.1,\"eve\":12.6,\"morn\":9.4},")
+                    .append("\"pressure\":").append(1012.5 + i)
+                    .append(",\"humidity\":").append(60 + i)
+                    .append(",\"weather\":[{\"id\":").append(800 + (i % 5))
+                    .append(",\"main\":\"Clouds\",\"description\":\"few clouds\",\"icon\":\"02d\"}],")
+                    .append("\"speed\":").append(3.1 + i * 0.1)
+                    .append(",\"deg\":").append(180 + i)
+                    .append(",\"clouds\":20}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    static class RecordingCallback implements ForecastParser.Callback {
+        String cityName;
+        double lat;
+        double lon;
+        final List<ContentValues> days = new ArrayList<ContentValues>();
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            this.cityName = cityName;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        @Override
+        public void onDay(int dayIndex, ContentValues weatherValues) {
+            assertEquals("Error: days were not handed out in order", days.size(), dayIndex);
+            days.add(weatherValues);
+        }
+    }
+
+    public void testParseForecast() throws Exception {
+        String json = createForecastJson(14);
+        RecordingCallback callback = new RecordingCallback();
+
+        int code = new ForecastParser().parse(
+                new ByteArrayInputStream(json.getBytes("UTF-8")), callback);
+
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        assertEquals("Mountain View", callback.cityName);
+        assertEquals(37.386051, callback.lat, 0.000001);
+        assertEquals(-122.083847, callback.lon, 0.000001);
+        assertEquals(14, callback.days.size());
+
+        // Every day must hold exactly what the org.json based parsing extracted
+        JSONArray list = new JSONObject(json).getJSONArray("list");
+        for (int i = 0; i < list.length(); i++) {
+            ContentValues expected = readDayFromTree(list.getJSONObject(i));
+            ContentValues actual = callback.days.get(i);
+            for (String column : expected.keySet()) {
+                assertEquals("Error: column " + column + " of day " + i + " did not match",
+                        expected.getAsString(column), actual.getAsString(column));
+            }
+        }
+    }
+
+    public void testParseErrorCode() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        int code = new ForecastParser().parse(
+                new StringReader("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"),
+                callback);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, code);
+        assertNull(callback.cityName);
+        assertTrue(callback.days.isEmpty());
+    }
+
+    public void testParseMissingField() throws Exception {
+        String json = createForecastJson(2).replaceFirst("\"humidity\":\\d+,", "");
+        try {
+            new ForecastParser().parse(new StringReader(json), new RecordingCallback());
+            fail("Error: a day without humidity should not be accepted");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+
+    public void testBenchmarkParsers() throws Exception {
+        benchmark(14);
+        benchmark(16);
+    }
+
+    private void benchmark(int numDays) throws Exception {
+        byte[] payload = createForecastJson(numDays).getBytes("UTF-8");
+
+        // Warm up both paths before measuring
+        parseWithTree(payload);
+        parseWithStream(payload);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            parseWithTree(payload);
+        }
+        long treeNanos = System.nanoTime() - start;
+        int treeAllocCount = Debug.getThreadAllocCount();
+        int treeAllocSize = Debug.getThreadAllocSize();
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            parseWithStream(payload);
+        }
+        long streamNanos = System.nanoTime() - start;
+        int streamAllocCount = Debug.getThreadAllocCount();
+        int streamAllocSize = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, numDays + " days, per parse: tree " + treeNanos / BENCHMARK_ROUNDS
+                + "ns / " + treeAllocCount / BENCHMARK_ROUNDS + " objects / "
+                + treeAllocSize / BENCHMARK_ROUNDS + " bytes, stream "
+                + streamNanos / BENCHMARK_ROUNDS + "ns / "
+                + streamAllocCount / BENCHMARK_ROUNDS + " objects / "
+                + streamAllocSize / BENCHMARK_ROUNDS + " bytes");
+    }
+
+    /*
+        The previous sync path: read the stream line by line into a buffer, build the tree and
+        then walk it.
+     */
+    private static int parseWithTree(byte[] payload) throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(payload)));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        JSONObject forecastJson = new JSONObject(buffer.toString());
+        JSONArray list = forecastJson.getJSONArray("list");
+        forecastJson.getJSONObject("city").getString("name");
+        for (int i = 0; i < list.length(); i++) {
+            readDayFromTree(list.getJSONObject(i));
+        }
+        return list.length();
+    }
+
+    private static int parseWithStream(byte[] payload) throws IOException, JSONException {
+        final int[] days = new int[1];
+        new ForecastParser().parse(new ByteArrayInputStream(payload), new ForecastParser.Callback() {
+            @Override
+            public void onCity(String cityName, double lat, double lon) {
+            }
+
+            @Override
+            public void onDay(int dayIndex, ContentValues weatherValues) {
+                days[0]++;
+            }
+        });
+        return days[0];
+    }
+
+    private static ContentValues readDayFromTree(JSONObject dayForecast) throws JSONException {
+        ContentValues weatherValues = new ContentValues();
+        JSONObject weatherObject = dayForecast.getJSONArray("weather").getJSONObject(0);
+        JSONObject temperatureObject = dayForecast.getJSONObject("temp");
+        weatherValues.put(WeatherEntry.COLUMN_HUMIDITY, dayForecast.getInt("humidity"));
+        weatherValues.put(WeatherEntry.COLUMN_PRESSURE, dayForecast.getDouble("pressure"));
+        weatherValues.put(WeatherEntry.COLUMN_WIND_SPEED, dayForecast.getDouble("speed"));
+        weatherValues.put(WeatherEntry.COLUMN_DEGREES, dayForecast.getDouble("deg"));
+        weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, temperatureObject.getDouble("max"));
+        weatherValues.put(WeatherEntry.COLUMN_MIN_TEMP, temperatureObject.getDouble("min"));
+        weatherValues.put(WeatherEntry.COLUMN_SHORT_DESC, weatherObject.getString("main"));
+        weatherValues.put(WeatherEntry.COLUMN_WEATHER_ID, weatherObject.getInt("id"));
+        return weatherValues;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+
+/*
+    Runs the ForecastResponseCache against a local stand-in for OpenWeatherMap, checking the
+    requests it gets and the bytes of forecast it sends back.
+ */
+public class TestForecastResponseCache extends AndroidTestCase {
+
+    private static final int TODAY = 2457000;
+    private static final String ETAG = StandInServer.ETAG;
+
+    private StandInServer mServer;
+    private ForecastResponseCache mCache;
+    private URL mUrl;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInServer();
+        mServer.forecast = TestForecastParser.createForecastJson(14);
+        mUrl = mServer.getUrl("94043");
+
+        File directory = new File(getContext().getCacheDir(), "test_forecast");
+        mCache = new ForecastResponseCache(directory);
+        mCache.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        mCache.clear();
+        super.tearDown();
+    }
+
+    public void testNotModified() throws Exception {
+        ForecastResponseCache.Response response = mCache.fetch(mUrl, TODAY);
+        assertFalse("Error: the first forecast can't be unchanged", response.isUnchanged());
+        assertNull(mServer.lastIfNoneMatch);
+        mCache.commit(response, TODAY);
+        int firstBytes = mServer.bodyBytes;
+
+        response = mCache.fetch(mUrl, TODAY);
+        assertEquals(ETAG, mServer.lastIfNoneMatch);
+        assertTrue("Error: a 304 should report the forecast as unchanged", response.isUnchanged());
+        response.close();
+        assertEquals("Error: a 304 should not transfer the forecast again",
+                firstBytes, mServer.bodyBytes);
+        assertEquals(2, mServer.requestCount);
+    }
+
+    public void testIdenticalBody() throws Exception {
+        mServer.sendETag = false;
+        mCache.commit(mCache.fetch(mUrl, TODAY), TODAY);
+
+        ForecastResponseCache.Response response = mCache.fetch(mUrl, TODAY);
+        assertNull(mServer.lastIfNoneMatch);
+        assertTrue("Error: the same bytes should report the forecast as unchanged",
+                response.isUnchanged());
+        response.close();
+
+        mServer.forecast = TestForecastParser.createForecastJson(13);
+        response = mCache.fetch(mUrl, TODAY);
+        assertFalse("Error: a different forecast was reported as unchanged",
+                response.isUnchanged());
+        response.close();
+        assertEquals(3, mServer.requestCount);
+    }
+
+    public void testNextDay() throws Exception {
+        mCache.commit(mCache.fetch(mUrl, TODAY), TODAY);
+
+        // The server has nothing new, but the rows have to be rebuilt for the new day
+        ForecastResponseCache.Response response = mCache.fetch(mUrl, TODAY + 1);
+        assertEquals(ETAG, mServer.lastIfNoneMatch);
+        assertTrue(response.notModified);
+        assertFalse("Error: yesterday's forecast should be processed again",
+                response.isUnchanged());
+        assertTrue("Error: the cached forecast should be handed back on a 304",
+                Arrays.equals(mServer.forecast.getBytes("UTF-8"), readBytes(response.getBody())));
+        mCache.commit(response, TODAY + 1);
+
+        response = mCache.fetch(mUrl, TODAY + 1);
+        assertTrue("Error: the new day should have been remembered", response.isUnchanged());
+        response.close();
+    }
+
+    public void testPartiallyReadBody() throws Exception {
+        mServer.sendETag = false;
+        // The parser may stop before the end, the rest still has to be cached
+        ForecastResponseCache.Response response = mCache.fetch(mUrl, TODAY);
+        assertTrue(response.getBody().read(new byte[16]) > 0);
+        mCache.commit(response, TODAY);
+
+        response = mCache.fetch(mUrl, TODAY);
+        assertTrue(response.isUnchanged());
+        response.close();
+    }
+
+    public void testUncommittedResponse() throws Exception {
+        // A response that could not be stored must not be skipped next time
+        mCache.fetch(mUrl, TODAY).close();
+
+        ForecastResponseCache.Response response = mCache.fetch(mUrl, TODAY);
+        assertNull(mServer.lastIfNoneMatch);
+        assertFalse(response.isUnchanged());
+        response.close();
+    }
+
+    public void testLocationsAreCachedSeparately() throws Exception {
+        mCache.commit(mCache.fetch(mUrl, TODAY), TODAY);
+
+        ForecastResponseCache.Response response = mCache.fetch(mServer.getUrl("99705"), TODAY);
+        assertNull("Error: validators of another location were sent", mServer.lastIfNoneMatch);
+        assertFalse(response.isUnchanged());
+        response.close();
+    }
+
+    private static byte[] readBytes(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
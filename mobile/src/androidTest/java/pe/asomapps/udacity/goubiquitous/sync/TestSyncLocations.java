@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import pe.asomapps.udacity.goubiquitous.Utility;
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/*
+    Syncs several tracked locations against a local stand-in for OpenWeatherMap, and measures
+    the wall time of a whole sync against the number of locations.
+ */
+public class TestSyncLocations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncLocations.class.getSimpleName();
+
+    private static final String LOCATION_PREFIX = "test-location-";
+    // Roughly what a request to OpenWeatherMap takes on a mobile network
+    private static final int LATENCY_MILLIS = 100;
+
+    private StandInServer mServer;
+    private SunshineSyncAdapter mSyncAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StandInServer();
+        mServer.forecast = TestForecastParser.createForecastJson(14);
+        // Every sync gets a new forecast, so nothing is skipped
+        mServer.varyBody = true;
+        mServer.latencyMillis = LATENCY_MILLIS;
+        SunshineSyncAdapter.sForecastBaseUrl = mServer.getBaseUrl();
+
+        mSyncAdapter = new SunshineSyncAdapter(getContext(), false);
+        deleteTestLocations();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteTestLocations();
+        new ForecastResponseCache(new File(getContext().getCacheDir(), "forecast")).clear();
+        mServer.shutdown();
+        SunshineSyncAdapter.sForecastBaseUrl = "http://api.openweathermap.org/data/2.5/forecast/daily?";
+        super.tearDown();
+    }
+
+    private void deleteTestLocations() {
+        String testLocations = "SELECT " + WeatherContract.LocationEntry._ID
+                + " FROM " + WeatherContract.LocationEntry.TABLE_NAME
+                + " WHERE " + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " LIKE ?";
+        String[] args = new String[]{LOCATION_PREFIX + "%"};
+        getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " IN (" + testLocations + ")", args);
+        getContext().getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " LIKE ?", args);
+    }
+
+    private static List<String> createLocations(int count) {
+        List<String> locations = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            locations.add(LOCATION_PREFIX + i);
+        }
+        return locations;
+    }
+
+    public void testSyncLocations() {
+        List<String> locations = createLocations(3);
+        mSyncAdapter.syncLocations(locations, SunshineSyncAdapter.MAX_PARALLEL_FETCHES);
+
+        assertEquals(3, mServer.requestCount);
+        for (String location : locations) {
+            Cursor cursor = getContext().getContentResolver().query(
+                    WeatherContract.WeatherEntry.buildWeatherLocation(location),
+                    null, null, null, null);
+            assertNotNull(cursor);
+            assertEquals("Error: the forecast of " + location + " was not stored",
+                    14, cursor.getCount());
+            cursor.close();
+        }
+    }
+
+    public void testTrackedLocations() {
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<String> locations = createLocations(2);
+        try {
+            for (String location : locations) {
+                Utility.addTrackedLocation(getContext(), location);
+            }
+            // The preferred location is never synced twice
+            Utility.addTrackedLocation(getContext(), preferredLocation);
+
+            List<String> syncLocations = SunshineSyncAdapter.getSyncLocations(getContext());
+            assertEquals(preferredLocation, syncLocations.get(0));
+            assertTrue(syncLocations.containsAll(locations));
+            assertEquals(syncLocations.size(), new HashSet<String>(syncLocations).size());
+
+            Utility.removeTrackedLocation(getContext(), locations.get(0));
+            assertFalse(SunshineSyncAdapter.getSyncLocations(getContext())
+                    .contains(locations.get(0)));
+        } finally {
+            for (String location : locations) {
+                Utility.removeTrackedLocation(getContext(), location);
+            }
+            Utility.removeTrackedLocation(getContext(), preferredLocation);
+        }
+    }
+
+    public void testBenchmarkSyncLocations() {
+        long sequentialMillis = 0;
+        long parallelMillis = 0;
+        for (int count : new int[]{1, 4, 8, 12}) {
+            List<String> locations = createLocations(count);
+
+            long start = System.nanoTime();
+            mSyncAdapter.syncLocations(locations, 1);
+            sequentialMillis = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            mSyncAdapter.syncLocations(locations, SunshineSyncAdapter.MAX_PARALLEL_FETCHES);
+            parallelMillis = (System.nanoTime() - start) / 1000000;
+
+            Log.i(LOG_TAG, count + " locations: sequential " + sequentialMillis
+                    + "ms, " + SunshineSyncAdapter.MAX_PARALLEL_FETCHES + " at a time "
+                    + parallelMillis + "ms");
+        }
+
+        // With 12 locations the requests alone take over a second one after the other
+        assertTrue("Error: fetching in parallel was not faster", parallelMillis < sequentialMillis);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestSyncRequestCoordinator extends AndroidTestCase {
+
+    private static final String ACCOUNT = "GoUbiquitous";
+    private static final long NOW = 1000000;
+
+    public void testQueuedRequestsAreMerged() {
+        SyncRequestCoordinator coordinator = new SyncRequestCoordinator();
+
+        assertTrue(coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_LOCATION_CHANGED, NOW));
+        assertFalse("A queued sync should satisfy the same request",
+                coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_MANUAL, NOW + 1));
+        assertTrue("Another location needs its own sync",
+                coordinator.onRequest(ACCOUNT, "99705", SyncRequestCoordinator.REASON_LOCATION_CHANGED, NOW + 2));
+
+        assertEquals(SyncRequestCoordinator.REASON_LOCATION_CHANGED | SyncRequestCoordinator.REASON_MANUAL,
+                coordinator.onSyncStarted(ACCOUNT, "99705"));
+    }
+
+    public void testRunningSyncSatisfiesRequests() {
+        SyncRequestCoordinator coordinator = new SyncRequestCoordinator();
+        coordinator.onSyncStarted(ACCOUNT, "94043");
+
+        assertFalse("The running sync should satisfy requests for its location",
+                coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_MANUAL, NOW));
+        assertTrue("A changed location needs a new sync",
+                coordinator.onRequest(ACCOUNT, "99705", SyncRequestCoordinator.REASON_LOCATION_CHANGED, NOW));
+        assertEquals(SyncRequestCoordinator.REASON_MANUAL, coordinator.onSyncFinished());
+
+        assertTrue("Once finished, the location can be synced again",
+                coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_MANUAL, NOW + 1));
+    }
+
+    public void testOnlyLateRequestsAreSyncedAgain() {
+        SyncRequestCoordinator coordinator = new SyncRequestCoordinator();
+        coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_LOCATION_CHANGED, NOW);
+        coordinator.onSyncStarted(ACCOUNT, "94043");
+        assertEquals("Error: the reasons the sync started with were handed back",
+                0, coordinator.onSyncFinished());
+
+        coordinator.onSyncStarted(ACCOUNT, "94043");
+        coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_LOCATION_CHANGED, NOW);
+        coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_MANUAL, NOW);
+        assertEquals(SyncRequestCoordinator.REASON_LOCATION_CHANGED | SyncRequestCoordinator.REASON_MANUAL,
+                coordinator.onSyncFinished());
+    }
+
+    public void testStalePendingRequestIsRepeated() {
+        SyncRequestCoordinator coordinator = new SyncRequestCoordinator();
+
+        assertTrue(coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_MANUAL, NOW));
+        assertTrue(coordinator.onRequest(ACCOUNT, "94043", SyncRequestCoordinator.REASON_MANUAL,
+                NOW + SyncRequestCoordinator.PENDING_TIMEOUT_MILLIS));
+    }
+}
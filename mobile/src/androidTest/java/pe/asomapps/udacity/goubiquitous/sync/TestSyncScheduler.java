@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks how the scheduler moves the sync interval, and replays synthetic days against it
+    and against the fixed hourly sync.
+ */
+public class TestSyncScheduler extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncScheduler.class.getSimpleName();
+
+    private static final int BASE_INTERVAL = SyncSimulation.HOUR;
+    private static final int SEEDS = 5;
+
+    public void testIntervalFollowsChanges() {
+        SyncScheduler scheduler = new SyncScheduler(BASE_INTERVAL);
+
+        int interval = BASE_INTERVAL;
+        for (int i = 0; i < 10; i++) {
+            int next = scheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_OK, false);
+            assertTrue("Unchanged forecasts should not shorten the interval", next >= interval);
+            interval = next;
+        }
+        assertEquals(scheduler.getMaxInterval(), interval);
+
+        for (int i = 0; i < 10; i++) {
+            interval = scheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_OK, true);
+        }
+        assertEquals(scheduler.getMinInterval(), interval);
+
+        scheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_OK, false);
+        assertEquals(scheduler.getMinInterval(), scheduler.onAlert());
+        assertTrue(scheduler.getFlexTime() < scheduler.getInterval());
+    }
+
+    public void testServerDownBacksOff() {
+        SyncScheduler scheduler = new SyncScheduler(BASE_INTERVAL);
+
+        int interval = scheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, false);
+        assertTrue("An unreachable server should not be asked more often than a working one",
+                interval >= BASE_INTERVAL);
+        for (int i = 0; i < 10; i++) {
+            int next = scheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, false);
+            assertEquals(Math.min(interval * 2, scheduler.getMaxBackoffInterval()), next);
+            interval = next;
+        }
+        assertEquals(scheduler.getMaxBackoffInterval(), interval);
+
+        assertEquals("The first sync after an outage should go back to the base interval",
+                BASE_INTERVAL, scheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_OK, true));
+    }
+
+    public void testSimulateDays() {
+        for (long seed = 0; seed < SEEDS; seed++) {
+            SyncSimulation day = SyncSimulation.createDay(seed);
+            SyncSimulation.Result fixed = day.runFixed(BASE_INTERVAL);
+            SyncSimulation.Result adaptive = day.runAdaptive(new SyncScheduler(BASE_INTERVAL));
+            Log.d(LOG_TAG, "Day " + seed + ", fixed: " + fixed + ", adaptive: " + adaptive);
+
+            assertEquals("The simulation should be deterministic",
+                    adaptive.toString(), day.runAdaptive(new SyncScheduler(BASE_INTERVAL)).toString());
+
+            SyncSimulation quietDay = SyncSimulation.createQuietDay(seed);
+            fixed = quietDay.runFixed(BASE_INTERVAL);
+            adaptive = quietDay.runAdaptive(new SyncScheduler(BASE_INTERVAL));
+            Log.d(LOG_TAG, "Quiet day " + seed + ", fixed: " + fixed + ", adaptive: " + adaptive);
+            assertTrue("A quiet day should need fewer requests than the hourly sync",
+                    adaptive.requests < fixed.requests);
+        }
+    }
+}
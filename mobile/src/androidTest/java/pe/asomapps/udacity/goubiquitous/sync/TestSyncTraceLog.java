@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.File;
+
+/*
+    Checks that the trace log only keeps the newest syncs, and still has them once reloaded.
+ */
+public class TestSyncTraceLog extends AndroidTestCase {
+
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "test_sync_traces.json");
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    private static SyncTrace createTrace(int locations) {
+        SyncTrace trace = new SyncTrace();
+        trace.setLocations(locations);
+        trace.addResponse(1024, false);
+        trace.addTime(SyncTrace.STAGE_COMMIT, System.nanoTime() - 5000);
+        trace.setRows(14, 1);
+        trace.finish(SunshineSyncAdapter.LOCATION_STATUS_OK);
+        return trace;
+    }
+
+    public void testKeepsNewestTraces() throws Exception {
+        SyncTraceLog log = new SyncTraceLog(mFile);
+        int added = SyncTraceLog.CAPACITY + 5;
+        for (int i = 0; i < added; i++) {
+            log.add(createTrace(i));
+        }
+
+        JSONArray traces = log.toJson();
+        assertEquals(SyncTraceLog.CAPACITY, traces.length());
+        assertEquals("The oldest traces should be dropped first",
+                added - SyncTraceLog.CAPACITY, traces.getJSONObject(0).getInt("locations"));
+        assertEquals(added - 1, traces.getJSONObject(traces.length() - 1).getInt("locations"));
+
+        JSONObject trace = traces.getJSONObject(0);
+        assertEquals("ok", trace.getString("outcome"));
+        assertEquals(1024, trace.getLong("bytes"));
+        assertEquals(14, trace.getInt("rowsWritten"));
+        assertTrue(trace.getJSONObject("stages").getLong("commit") >= 5);
+
+        // A new process reads them back in the same order
+        JSONArray reloaded = new SyncTraceLog(mFile).toJson();
+        assertEquals(traces.toString(), reloaded.toString());
+    }
+}
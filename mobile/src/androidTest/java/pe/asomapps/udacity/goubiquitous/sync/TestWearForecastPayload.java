@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.nio.ByteBuffer;
+
+public class TestWearForecastPayload extends AndroidTestCase {
+
+    private static final int START_DAY = 2457000;
+
+    public void testPack() {
+        Time dayTime = new Time();
+        MatrixCursor cursor = new MatrixCursor(WearForecastPayload.PROJECTION);
+        for (int i = 0; i < 14; i++) {
+            cursor.addRow(new Object[]{dayTime.setJulianDay(START_DAY + i), 800 + i, 20.26, -3.14});
+        }
+
+        byte[] days = WearForecastPayload.pack(cursor);
+        assertEquals("Error: every day should take the same bytes",
+                14 * WearForecastPayload.DAY_SIZE, days.length);
+
+        // The watch face reads the days back with this layout
+        ByteBuffer buffer = ByteBuffer.wrap(days);
+        for (int i = 0; i < 14; i++) {
+            assertEquals(START_DAY + i, buffer.getInt());
+            assertEquals(800 + i, buffer.getShort());
+            assertEquals(203, buffer.getShort());
+            assertEquals(-31, buffer.getShort());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.widget;
+
+import android.database.MatrixCursor;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.widget.RemoteViews;
+
+import pe.asomapps.udacity.goubiquitous.R;
+
+public class TestDetailWidgetRenderer extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // The bundled art, so nothing is downloaded
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_art_pack_key),
+                        mContext.getString(R.string.pref_art_pack_sunshine))
+                .commit();
+    }
+
+    /*
+        Every item is built by the render, the lookups afterwards hand out the same views, and a
+        new render only builds the rows that changed.
+     */
+    public void testRenderBuildsOnlyChangedRows() {
+        DetailWidgetRenderer renderer = new DetailWidgetRenderer(mContext);
+        long today = System.currentTimeMillis();
+
+        renderer.render(createForecast(today, 20), LOCATION);
+        assertEquals(7, renderer.getCount());
+        assertEquals(7, renderer.getBuiltCount());
+        assertEquals(0, renderer.getReusedCount());
+        RemoteViews first = renderer.getViewAt(0);
+        assertNotNull(first);
+        assertSame(first, renderer.getViewAt(0));
+        assertEquals(100, renderer.getItemId(0));
+        assertNull(renderer.getViewAt(7));
+
+        MatrixCursor changed = createForecast(today, 20);
+        changed.addRow(new Object[]{200, today + 7 * DAY_IN_MILLIS, 500, "Rain", 15, 10});
+        renderer.render(changed, LOCATION);
+        assertEquals(8, renderer.getCount());
+        assertEquals("Error: unchanged rows were built again", 8, renderer.getBuiltCount());
+        assertEquals(7, renderer.getReusedCount());
+        assertSame(first, renderer.getViewAt(0));
+
+        renderer.render(createForecast(today, 25), LOCATION);
+        assertEquals("Error: rows with new temperatures were reused", 15,
+                renderer.getBuiltCount());
+    }
+
+    /*
+        Items whose art failed to download show the bundled icon for now, and the next render
+        builds them again to give the download another try.
+     */
+    public void testItemsWithMissingArtAreBuiltAgain() {
+        // Nothing listens there, every download fails
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_art_pack_key),
+                        "http://127.0.0.1:1/%s.png")
+                .commit();
+        try {
+            DetailWidgetRenderer renderer = new DetailWidgetRenderer(mContext);
+            long today = System.currentTimeMillis();
+
+            renderer.render(createForecast(today, 20), LOCATION);
+            assertEquals(7, renderer.getCount());
+            assertNotNull(renderer.getViewAt(0));
+
+            renderer.render(createForecast(today, 20), LOCATION);
+            assertEquals("Error: items without their art were reused", 0,
+                    renderer.getReusedCount());
+            assertEquals(14, renderer.getBuiltCount());
+        } finally {
+            PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                    .putString(mContext.getString(R.string.pref_art_pack_key),
+                            mContext.getString(R.string.pref_art_pack_sunshine))
+                    .commit();
+        }
+    }
+
+    private static MatrixCursor createForecast(long today, double maxTemp) {
+        MatrixCursor cursor = new MatrixCursor(DetailWidgetRenderer.FORECAST_COLUMNS);
+        for (int i = 0; i < 7; i++) {
+            cursor.addRow(new Object[]{100 + i, today + i * DAY_IN_MILLIS, 800, "Clear",
+                    maxTemp, 10});
+        }
+        return cursor;
+    }
+}
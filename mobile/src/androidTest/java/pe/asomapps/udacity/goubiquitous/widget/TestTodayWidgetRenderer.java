@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.widget;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.widget.RemoteViews;
+
+import pe.asomapps.udacity.goubiquitous.R;
+import pe.asomapps.udacity.goubiquitous.Utility;
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+public class TestTodayWidgetRenderer extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(mContext));
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, locationValues);
+
+        ContentValues weatherValues = new ContentValues();
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                ContentUris.parseId(locationUri));
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, System.currentTimeMillis());
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 321);
+        mContext.getContentResolver().insert(WeatherContract.WeatherEntry.CONTENT_URI,
+                weatherValues);
+        TodayWidgetRenderer.getInstance().invalidate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        TodayWidgetRenderer.getInstance().invalidate();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    /*
+        A resize to a size already used hands out the same views, a new size is rendered without
+        reading the forecast again, and a data change renders again only what is asked for.
+     */
+    public void testRenderOncePerLayout() {
+        TodayWidgetRenderer renderer = TodayWidgetRenderer.getInstance();
+        int loads = renderer.getLoadCount();
+        int renders = renderer.getRenderCount();
+
+        RemoteViews small = renderer.getViews(mContext, R.layout.widget_today_small);
+        assertNotNull("Error: today's forecast was not found", small);
+        assertSame(small, renderer.getViews(mContext, R.layout.widget_today_small));
+        assertEquals(loads + 1, renderer.getLoadCount());
+        assertEquals(renders + 1, renderer.getRenderCount());
+
+        RemoteViews large = renderer.getViews(mContext, R.layout.widget_today_large);
+        assertNotSame(small, large);
+        assertEquals("Error: a resize read the forecast again",
+                loads + 1, renderer.getLoadCount());
+        assertEquals(renders + 2, renderer.getRenderCount());
+
+        renderer.invalidate();
+        assertNotSame(small, renderer.getViews(mContext, R.layout.widget_today_small));
+        assertEquals(loads + 2, renderer.getLoadCount());
+        assertEquals("Error: a size not in use was rendered again",
+                renders + 3, renderer.getRenderCount());
+    }
+}
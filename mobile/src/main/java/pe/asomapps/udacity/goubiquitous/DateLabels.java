@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Builds the date labels of the forecast, see {@link Utility#getFriendlyDayString}.
+ *
+ * Labels only depend on the day, today's date, the locale and the time zone, so each one is
+ * built once per day and kept, along with the formatters. Everything is dropped when the day is
+ * over, when the UTC offset changes, or when the time zone, the locale or the clock are changed.
+ */
+public class DateLabels {
+
+    private static DateLabels sInstance;
+
+    private final Context mContext;
+
+    // Valid until the next day starts, or an invalidation
+    private boolean mValid;
+    private long mDayEndMillis;
+    private TimeZone mTimeZone;
+    private long mGmtOffMillis;
+    private int mCurrentJulianDay;
+    private String mToday;
+    private String mTomorrow;
+    private SimpleDateFormat mShortenedDateFormat;
+    private SimpleDateFormat mDayFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private final Time mTime = new Time();
+
+    // Labels built so far, by julian day
+    private final SparseArray<String> mFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mFullFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mDayNames = new SparseArray<String>();
+    private final SparseArray<String> mMonthDays = new SparseArray<String>();
+
+    private final BroadcastReceiver mInvalidationReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized DateLabels getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DateLabels(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DateLabels(Context context) {
+        mContext = context;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        context.registerReceiver(mInvalidationReceiver, filter);
+    }
+
+    public synchronized void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        validate();
+        int julianDay = getJulianDay(dateInMillis);
+
+        // If the date we're building the String for is today's date, the format
+        // is "Today, June 24"
+        if (displayLongToday && julianDay == mCurrentJulianDay) {
+            return getFullFriendlyDayString(dateInMillis);
+        }
+        String label = mFriendlyDays.get(julianDay);
+        if (label == null) {
+            if (julianDay < mCurrentJulianDay + 7) {
+                // If the input date is less than a week in the future, just return the day name.
+                label = getDayName(dateInMillis);
+            } else {
+                // Otherwise, use the form "Mon Jun 3"
+                label = mShortenedDateFormat.format(dateInMillis);
+            }
+            mFriendlyDays.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        validate();
+        int julianDay = getJulianDay(dateInMillis);
+        String label = mFullFriendlyDays.get(julianDay);
+        if (label == null) {
+            label = mContext.getString(R.string.format_full_friendly_date,
+                    getDayName(dateInMillis), getFormattedMonthDay(dateInMillis));
+            mFullFriendlyDays.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        validate();
+        int julianDay = getJulianDay(dateInMillis);
+        String label = mDayNames.get(julianDay);
+        if (label == null) {
+            if (julianDay == mCurrentJulianDay) {
+                label = mToday;
+            } else if (julianDay == mCurrentJulianDay + 1) {
+                label = mTomorrow;
+            } else {
+                // Otherwise, the format is just the day of the week (e.g "Wednesday".
+                label = mDayFormat.format(dateInMillis);
+            }
+            mDayNames.put(julianDay, label);
+        }
+        return label;
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        validate();
+        int julianDay = getJulianDay(dateInMillis);
+        String label = mMonthDays.get(julianDay);
+        if (label == null) {
+            label = mMonthDayFormat.format(dateInMillis);
+            mMonthDays.put(julianDay, label);
+        }
+        return label;
+    }
+
+    private int getJulianDay(long dateInMillis) {
+        return Time.getJulianDay(dateInMillis, mGmtOffMillis / 1000);
+    }
+
+    /**
+     * Starts over if the day is over or the UTC offset changed since the labels were built.
+     */
+    private void validate() {
+        long now = System.currentTimeMillis();
+        if (mValid && now < mDayEndMillis && mTimeZone.getOffset(now) == mGmtOffMillis) {
+            return;
+        }
+
+        mTimeZone = TimeZone.getDefault();
+        mGmtOffMillis = mTimeZone.getOffset(now);
+        mCurrentJulianDay = getJulianDay(now);
+        mTime.clear(mTimeZone.getID());
+        mDayEndMillis = mTime.setJulianDay(mCurrentJulianDay + 1);
+
+        Locale locale = Locale.getDefault();
+        mToday = mContext.getString(R.string.today);
+        mTomorrow = mContext.getString(R.string.tomorrow);
+        mShortenedDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+        mDayFormat = new SimpleDateFormat("EEEE", locale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+
+        mFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+        mValid = true;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+import android.support.v4.os.TraceCompat;
+
+/**
+ * {@link CursorLoader} for the forecast list that also formats every row in the background,
+ * so the adapter doesn't have to while scrolling.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, along with the rows formatted from it.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final ForecastRow[] mRows;
+
+        ForecastCursor(Cursor cursor, ForecastRow[] rows) {
+            super(cursor);
+            mRows = rows;
+        }
+
+        public ForecastRow getRow(int position) {
+            return mRows[position];
+        }
+    }
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        TraceCompat.beginSection("ForecastLoader.formatRows");
+        try {
+            return new ForecastCursor(cursor, ForecastRow.fromCursorRows(getContext(), cursor));
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+}
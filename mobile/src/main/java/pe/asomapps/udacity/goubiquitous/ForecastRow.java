@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.content.Context;
+import android.database.Cursor;
+
+/**
+ * Everything a forecast list item shows, formatted once when the forecast is loaded so that
+ * binding the item is only a matter of setting fields.
+ */
+public class ForecastRow {
+    public final long date;
+
+    // The first day shows a long date and the art when the list uses the "today" layout
+    public final String dateLabel;
+    public final String todayDateLabel;
+    public final int iconResId;
+    public final int artResId;
+    // Null when using the local graphics
+    public final String artUrl;
+
+    public final String description;
+    public final String descriptionContentDescription;
+    public final String high;
+    public final String highContentDescription;
+    public final String low;
+    public final String lowContentDescription;
+
+    private ForecastRow(Context context, Cursor cursor, boolean usingLocalGraphics) {
+        date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+
+        dateLabel = Utility.getFriendlyDayString(context, date, false);
+        todayDateLabel = Utility.getFriendlyDayString(context, date, true);
+        iconResId = Utility.getIconResourceForWeatherCondition(weatherId);
+        artResId = Utility.getArtResourceForWeatherCondition(weatherId);
+        artUrl = usingLocalGraphics ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+        description = Utility.getStringForWeatherCondition(context, weatherId);
+        descriptionContentDescription = context.getString(R.string.a11y_forecast, description);
+        high = Utility.formatTemperature(context, cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        highContentDescription = context.getString(R.string.a11y_high_temp, high);
+        low = Utility.formatTemperature(context, cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        lowContentDescription = context.getString(R.string.a11y_low_temp, low);
+    }
+
+    /**
+     * Builds the row for the current position of a cursor read with
+     * {@link ForecastFragment#FORECAST_COLUMNS}.
+     */
+    public static ForecastRow fromCursor(Context context, Cursor cursor) {
+        return new ForecastRow(context, cursor, Utility.usingLocalGraphics(context));
+    }
+
+    /**
+     * Builds the rows for every position of a cursor read with
+     * {@link ForecastFragment#FORECAST_COLUMNS}.
+     */
+    public static ForecastRow[] fromCursorRows(Context context, Cursor cursor) {
+        ForecastRow[] rows = new ForecastRow[cursor.getCount()];
+        boolean usingLocalGraphics = Utility.usingLocalGraphics(context);
+        for (int i = 0; i < rows.length; i++) {
+            cursor.moveToPosition(i);
+            rows[i] = new ForecastRow(context, cursor, usingLocalGraphics);
+        }
+        return rows;
+    }
+}
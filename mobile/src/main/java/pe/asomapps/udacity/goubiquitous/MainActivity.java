@@ -15,9 +15,11 @@
  */
 package pe.asomapps.udacity.goubiquitous;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
@@ -33,6 +35,7 @@ import android.view.View;
 import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
 import pe.asomapps.udacity.goubiquitous.gcm.RegistrationIntentService;
 import pe.asomapps.udacity.goubiquitous.sync.SunshineSyncAdapter;
+import pe.asomapps.udacity.goubiquitous.sync.SyncTraceLog;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
 
@@ -113,6 +116,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_export_sync_traces).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -128,10 +132,39 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
         }
+        if (id == R.id.action_export_sync_traces) {
+            exportSyncTraces(item.getTitle());
+            return true;
+        }
 
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Shares the traces of the last syncs as JSON. They are read from disk, so off the main
+     * thread.
+     */
+    private void exportSyncTraces(final CharSequence title) {
+        final Context context = getApplicationContext();
+        new AsyncTask<Void, Void, String>() {
+            @Override
+            protected String doInBackground(Void... params) {
+                return SyncTraceLog.getInstance(context).toJson().toString();
+            }
+
+            @Override
+            protected void onPostExecute(String traces) {
+                if (isFinishing()) {
+                    return;
+                }
+                Intent shareIntent = new Intent(Intent.ACTION_SEND)
+                        .setType("text/plain")
+                        .putExtra(Intent.EXTRA_TEXT, traces);
+                startActivity(Intent.createChooser(shareIntent, title));
+            }
+        }.execute();
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
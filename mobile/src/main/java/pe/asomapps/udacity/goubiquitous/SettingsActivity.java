@@ -16,8 +16,10 @@
 package pe.asomapps.udacity.goubiquitous;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
@@ -30,6 +32,7 @@ import android.view.View;
 import android.widget.ImageView;
 import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
 import pe.asomapps.udacity.goubiquitous.sync.SunshineSyncAdapter;
+import pe.asomapps.udacity.goubiquitous.sync.SyncRequestCoordinator;
 import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
 import com.google.android.gms.maps.model.LatLng;
@@ -166,10 +169,22 @@ public class SettingsActivity extends PreferenceActivity
             }
 
             Utility.resetLocationStatus(this);
-            SunshineSyncAdapter.syncImmediately(this);
+            SunshineSyncAdapter.syncImmediately(this,
+                    SyncRequestCoordinator.REASON_LOCATION_CHANGED);
         } else if ( key.equals(getString(R.string.pref_units_key)) ) {
             // units have changed. update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+            // Syncs only redraw the widgets for new forecasts, every day shows other units now
+            SunshineSyncAdapter.updateWidgets(this, null);
+            // The watch formats the temperatures itself, with the units of the payload
+            final Context context = getApplicationContext();
+            new AsyncTask<Void, Void, Void>() {
+                @Override
+                protected Void doInBackground(Void... params) {
+                    SunshineSyncAdapter.republishWearables(context);
+                    return null;
+                }
+            }.execute();
         } else if ( key.equals(getString(R.string.pref_location_status_key)) ) {
             // our location status has changed.  Update the summary accordingly
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
@@ -234,7 +249,8 @@ public class SettingsActivity extends PreferenceActivity
                 }
 
                 Utility.resetLocationStatus(this);
-                SunshineSyncAdapter.syncImmediately(this);
+                SunshineSyncAdapter.syncImmediately(this,
+                        SyncRequestCoordinator.REASON_LOCATION_CHANGED);
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.data;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide map of location settings to the _ID of their row.
+ *
+ * Every sync and every pushed forecast needs the id of its locations. The location table is
+ * tiny and rarely written, so it is read whole on the first lookup and kept until
+ * {@link WeatherProvider} writes to it again.
+ */
+public class LocationRegistry {
+
+    private static final String[] LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING
+    };
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_LOCATION_SETTING = 1;
+
+    private static final LocationRegistry sInstance = new LocationRegistry();
+
+    // null until the table is read
+    private Map<String, Long> mLocationIds;
+    // Incremented on every invalidation
+    private int mGeneration;
+    private int mLoadCount;
+
+    public static LocationRegistry getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * @return the id of the stored location, or -1 if it isn't stored yet
+     */
+    public long getLocationId(Context context, String locationSetting) {
+        Map<String, Long> locationIds;
+        int generation;
+        synchronized (this) {
+            locationIds = mLocationIds;
+            generation = mGeneration;
+            if (locationIds == null) {
+                mLoadCount++;
+            }
+        }
+
+        if (locationIds == null) {
+            // Read outside the lock, concurrent loads just end up storing the same map
+            locationIds = new HashMap<String, Long>();
+            Cursor cursor = context.getContentResolver().query(
+                    WeatherContract.LocationEntry.CONTENT_URI, LOCATION_COLUMNS, null, null, null);
+            if (cursor == null) {
+                return -1;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    locationIds.put(cursor.getString(INDEX_LOCATION_SETTING),
+                            cursor.getLong(INDEX_ID));
+                }
+            } finally {
+                cursor.close();
+            }
+            synchronized (this) {
+                // A write while we were reading may have made the map stale already
+                if (generation == mGeneration) {
+                    mLocationIds = locationIds;
+                }
+            }
+        }
+
+        Long locationId = locationIds.get(locationSetting);
+        return locationId != null ? locationId : -1;
+    }
+
+    /**
+     * Drops the map. Called on each write to the location table.
+     */
+    public synchronized void invalidate() {
+        mLocationIds = null;
+        mGeneration++;
+    }
+
+    /**
+     * @return how many times the location table has been read
+     */
+    public synchronized int getLoadCount() {
+        return mLoadCount;
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.format.Time;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Process wide read-through cache of today's forecast for each location.
+ *
+ * The notification, the wearables, the Today widget and Muzei all look up the same row right
+ * after every sync. Entries are keyed by location setting and julian day, so they expire on their
+ * own at midnight. {@link WeatherProvider} drops them on every write, and the sync adapter puts
+ * today's values back as soon as it stores them.
+ */
+public class TodayForecastCache {
+
+    private static final String[] TODAY_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_SHORT_DESC = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+
+    private static final TodayForecastCache sInstance = new TodayForecastCache();
+
+    /**
+     * Today's weather for one location.
+     */
+    public static class TodayForecast {
+        public final long date;
+        public final int weatherId;
+        public final String shortDesc;
+        public final double maxTemp;
+        public final double minTemp;
+
+        public TodayForecast(long date, int weatherId, String shortDesc, double maxTemp,
+                             double minTemp) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.shortDesc = shortDesc;
+            this.maxTemp = maxTemp;
+            this.minTemp = minTemp;
+        }
+
+        /**
+         * Builds it from the values of a weather row, as sent to the provider.
+         */
+        public static TodayForecast fromValues(ContentValues values) {
+            return new TodayForecast(
+                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                    values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP));
+        }
+    }
+
+    private static class Entry {
+        final int julianDay;
+        // null when there is no row for today, which is worth remembering too
+        final TodayForecast forecast;
+
+        Entry(int julianDay, TodayForecast forecast) {
+            this.julianDay = julianDay;
+            this.forecast = forecast;
+        }
+    }
+
+    private final Map<String, Entry> mEntries = new HashMap<String, Entry>();
+    private final Time mTime = new Time();
+    // Incremented on every invalidation
+    private int mGeneration;
+    private int mHitCount;
+    private int mMissCount;
+
+    public static TodayForecastCache getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns today's forecast for the location, querying the provider only when it isn't
+     * cached yet.
+     *
+     * @return the forecast, or null if there is no row for today
+     */
+    public TodayForecast get(Context context, String locationSetting) {
+        int julianDay;
+        int generation;
+        synchronized (this) {
+            julianDay = getCurrentJulianDay();
+            generation = mGeneration;
+            Entry entry = mEntries.get(locationSetting);
+            if (entry != null && entry.julianDay == julianDay) {
+                mHitCount++;
+                return entry.forecast;
+            }
+            mMissCount++;
+        }
+
+        // Queried outside the lock, concurrent misses just end up storing the same row
+        TodayForecast forecast = null;
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, TODAY_COLUMNS, null,
+                null, null);
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    forecast = new TodayForecast(
+                            cursor.getLong(INDEX_DATE),
+                            cursor.getInt(INDEX_WEATHER_ID),
+                            cursor.getString(INDEX_SHORT_DESC),
+                            cursor.getDouble(INDEX_MAX_TEMP),
+                            cursor.getDouble(INDEX_MIN_TEMP));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        synchronized (this) {
+            // A write while we were reading may have made the row stale already
+            if (generation == mGeneration) {
+                mEntries.put(locationSetting, new Entry(julianDay, forecast));
+            }
+        }
+        return forecast;
+    }
+
+    /**
+     * Returns the number of invalidations so far, to be read before a write whose values are
+     * later handed to {@link #put}.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Stores the forecast just written for the location and day.
+     *
+     * @param generation the {@link #getGeneration()} from before the write. The write itself
+     *                   invalidates the cache once, any other invalidation since means another
+     *                   write may have replaced the row and the forecast is dropped.
+     */
+    public synchronized void put(String locationSetting, int julianDay, TodayForecast forecast,
+                                 int generation) {
+        if (mGeneration == generation + 1) {
+            mEntries.put(locationSetting, new Entry(julianDay, forecast));
+        }
+    }
+
+    /**
+     * Drops every entry. Called on each write to the weather or location tables.
+     */
+    public synchronized void invalidate() {
+        mEntries.clear();
+        mGeneration++;
+    }
+
+    public synchronized int getHitCount() {
+        return mHitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return mMissCount;
+    }
+
+    private int getCurrentJulianDay() {
+        mTime.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), mTime.gmtoff);
+    }
+}
@@ -17,19 +17,39 @@ package pe.asomapps.udacity.goubiquitous.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /**
+     * State of the batch applied by the current thread, see {@link #applyBatch}.
+     */
+    private static class Batch {
+        // Notified together once the batch commits
+        final Set<Uri> changedUris = new HashSet<Uri>();
+        WeatherUpsertHelper upsertHelper;
+        // The location registry is only dropped once the transaction is over
+        boolean locationsChanged;
+    }
+
+    private final ThreadLocal<Batch> mBatch = new ThreadLocal<Batch>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
@@ -232,6 +252,19 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER: {
+                Batch batch = mBatch.get();
+                if (batch != null) {
+                    // Batches write days like bulkInsert, updating the stored ones in place.
+                    // The _ID of an updated day isn't known, so the table's URI is returned.
+                    if (batch.upsertHelper == null) {
+                        batch.upsertHelper = new WeatherUpsertHelper(db);
+                    }
+                    if (!batch.upsertHelper.upsert(values)) {
+                        throw new android.database.SQLException("Failed to insert row into " + uri);
+                    }
+                    returnUri = WeatherContract.WeatherEntry.CONTENT_URI;
+                    break;
+                }
                 normalizeDate(values);
                 long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
@@ -241,20 +274,55 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
-                long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                String locationSetting = values.getAsString(
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+                long _id;
+                boolean inserted = false;
+                // Insert or get in one transaction, so syncs racing to add the same new
+                // location end up sharing its row instead of failing
+                db.beginTransaction();
+                try {
+                    _id = findLocation(db, locationSetting);
+                    if (_id == -1) {
+                        _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                        inserted = true;
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                if (!inserted) {
+                    return returnUri;
+                }
+                invalidateLocations();
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
+    /**
+     * @return the id of the location, or -1 if it isn't stored
+     */
+    private static long findLocation(SQLiteDatabase db, String locationSetting) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
@@ -270,17 +338,84 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                invalidateLocations();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
 
+    /**
+     * Applies the operations in a single transaction, notifying observers once it commits. The
+     * notification is for the table changed, or for the whole contract if both were.
+     *
+     * Weather rows inserted by the batch are written like {@link #bulkInsert} does.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Batch batch = new Batch();
+        mBatch.set(batch);
+        ContentProviderResult[] results;
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            if (batch.upsertHelper != null) {
+                batch.upsertHelper.close();
+            }
+            db.endTransaction();
+            mBatch.remove();
+            // With WAL, a lookup during the transaction still reads the locations from before
+            // it, so the registry is only dropped once they are committed
+            if (batch.locationsChanged) {
+                LocationRegistry.getInstance().invalidate();
+            }
+        }
+
+        if (!batch.changedUris.isEmpty()) {
+            Uri uri = batch.changedUris.size() == 1
+                    ? batch.changedUris.iterator().next()
+                    : WeatherContract.BASE_CONTENT_URI;
+            TodayForecastCache.getInstance().invalidate();
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * Lets observers know about a committed write, or keeps it for the end of the batch.
+     */
+    private void notifyChange(Uri uri) {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.changedUris.add(uri);
+            return;
+        }
+        TodayForecastCache.getInstance().invalidate();
+        getContext().getContentResolver().notifyChange(uri, null);
+    }
+
+    /**
+     * Drops the location registry after a write to the location table, or marks the batch so
+     * it is dropped when the batch's transaction ends.
+     */
+    private void invalidateLocations() {
+        Batch batch = mBatch.get();
+        if (batch != null) {
+            batch.locationsChanged = true;
+        } else {
+            LocationRegistry.getInstance().invalidate();
+        }
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -305,12 +440,13 @@ public class WeatherProvider extends ContentProvider {
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                invalidateLocations();
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -323,19 +459,20 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                // Days already stored are updated in place, so their _ID survives the sync
+                WeatherUpsertHelper upsertHelper = new WeatherUpsertHelper(db);
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (upsertHelper.upsert(value)) {
                             returnCount++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    upsertHelper.close();
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
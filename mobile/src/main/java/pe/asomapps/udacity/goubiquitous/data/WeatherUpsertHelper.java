@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Build;
+import android.text.format.Time;
+import android.util.Log;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract.WeatherEntry;
+
+/**
+ * Writes batches of weather rows with two statements compiled once per batch.
+ *
+ * A row is inserted when its (date, location_id) pair is new, and updated in place otherwise,
+ * so the _ID of a day doesn't change from one sync to the next the way it does with the table's
+ * ON CONFLICT REPLACE (which deletes the old row and inserts a new one).
+ *
+ * Not thread safe, it is meant to be used inside a single transaction.
+ */
+class WeatherUpsertHelper {
+    private static final String LOG_TAG = WeatherUpsertHelper.class.getSimpleName();
+
+    // Columns written besides the (location_id, date) key, in binding order.
+    private static final String[] VALUE_COLUMNS = {
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // The key is bound last in both statements, right after the value columns.
+    private static final int INDEX_LOC_KEY = VALUE_COLUMNS.length + 1;
+    private static final int INDEX_DATE = VALUE_COLUMNS.length + 2;
+
+    private final SQLiteDatabase mDb;
+    private final SQLiteStatement mInsertStatement;
+    private final SQLiteStatement mUpdateStatement;
+    private final Time mTime = new Time();
+
+    WeatherUpsertHelper(SQLiteDatabase db) {
+        mDb = db;
+        StringBuilder columns = new StringBuilder();
+        StringBuilder placeholders = new StringBuilder();
+        StringBuilder assignments = new StringBuilder();
+        for (String column : VALUE_COLUMNS) {
+            columns.append(column).append(", ");
+            placeholders.append("?, ");
+            if (assignments.length() > 0) assignments.append(", ");
+            assignments.append(column).append(" = ?");
+        }
+
+        // OR IGNORE overrides the table's REPLACE strategy, so an existing day is left alone
+        // and reported back as not inserted. It also ignores rows breaking any other
+        // constraint, the update then matches nothing and tells them apart.
+        mInsertStatement = db.compileStatement("INSERT OR IGNORE INTO " + WeatherEntry.TABLE_NAME +
+                " (" + columns + WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE +
+                ") VALUES (" + placeholders + "?, ?)");
+        mUpdateStatement = db.compileStatement("UPDATE " + WeatherEntry.TABLE_NAME +
+                " SET " + assignments +
+                " WHERE " + WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherEntry.COLUMN_DATE + " = ?");
+    }
+
+    /**
+     * Inserts the row, or updates the existing one for the same location and day.
+     *
+     * @return true if the row was written
+     */
+    boolean upsert(ContentValues values) {
+        try {
+            bindRow(mInsertStatement, values);
+            if (mInsertStatement.executeInsert() != -1) {
+                return true;
+            }
+            bindRow(mUpdateStatement, values);
+            // Nothing updated means the insert was ignored for another reason than the day
+            // being stored, e.g. a missing NOT NULL column
+            if (executeUpdate() == 0) {
+                Log.e(LOG_TAG, "Error upserting " + values);
+                return false;
+            }
+            return true;
+        } catch (SQLException e) {
+            // Same contract as SQLiteDatabase.insert: a bad row is logged and skipped
+            Log.e(LOG_TAG, "Error upserting " + values, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of rows changed by the update statement
+     */
+    private long executeUpdate() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return executeUpdateDelete();
+        }
+        mUpdateStatement.execute();
+        return DatabaseUtils.longForQuery(mDb, "SELECT changes()", null);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private long executeUpdateDelete() {
+        return mUpdateStatement.executeUpdateDelete();
+    }
+
+    void close() {
+        mInsertStatement.close();
+        mUpdateStatement.close();
+    }
+
+    private void bindRow(SQLiteStatement statement, ContentValues values) {
+        statement.clearBindings();
+        for (int i = 0; i < VALUE_COLUMNS.length; i++) {
+            bindValue(statement, i + 1, values.get(VALUE_COLUMNS[i]));
+        }
+        bindValue(statement, INDEX_LOC_KEY, values.get(WeatherEntry.COLUMN_LOC_KEY));
+
+        Long date = values.getAsLong(WeatherEntry.COLUMN_DATE);
+        if (date != null) {
+            long normalizedDate = normalizeDate(date);
+            // Hand the normalized date back to the caller, as the provider always did
+            values.put(WeatherEntry.COLUMN_DATE, normalizedDate);
+            statement.bindLong(INDEX_DATE, normalizedDate);
+        }
+    }
+
+    // Same as WeatherContract.normalizeDate, reusing one Time for the whole batch
+    private long normalizeDate(long date) {
+        mTime.set(date);
+        int julianDay = Time.getJulianDay(date, mTime.gmtoff);
+        return mTime.setJulianDay(julianDay);
+    }
+
+    private static void bindValue(SQLiteStatement statement, int index, Object value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else if (value instanceof Double || value instanceof Float) {
+            statement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            statement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            statement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else {
+            statement.bindString(index, value.toString());
+        }
+    }
+}
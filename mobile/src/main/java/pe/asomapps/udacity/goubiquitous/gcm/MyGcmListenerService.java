@@ -29,6 +29,8 @@ import android.widget.Toast;
 
 import pe.asomapps.udacity.goubiquitous.MainActivity;
 import pe.asomapps.udacity.goubiquitous.R;
+import pe.asomapps.udacity.goubiquitous.sync.ForecastDeltaService;
+import pe.asomapps.udacity.goubiquitous.sync.SyncScheduler;
 
 import com.google.android.gms.gcm.GcmListenerService;
 
@@ -42,6 +44,8 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    // Changed days of a forecast, see ForecastDeltaService
+    private static final String EXTRA_FORECAST = "forecast";
 
     public static final int NOTIFICATION_ID = 1;
 
@@ -63,17 +67,25 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
-                // Process message and then post a notification of the received message.
-                try {
-                    JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
-                    String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
-                } catch (JSONException e) {
-                    // JSON parsing failed, so we just let this message go, since GCM is not one
-                    // of our critical features.
+                // Forecast changes are written right away, there's nothing to show
+                if (data.containsKey(EXTRA_FORECAST)) {
+                    ForecastDeltaService.enqueue(this, data.getString(EXTRA_FORECAST));
+                }
+                if (data.containsKey(EXTRA_DATA)) {
+                    // Process message and then post a notification of the received message.
+                    try {
+                        JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
+                        String weather = jsonObject.getString(EXTRA_WEATHER);
+                        String location = jsonObject.getString(EXTRA_LOCATION);
+                        String alert =
+                                String.format(getString(R.string.gcm_weather_alert), weather, location);
+                        sendNotification(alert);
+                        // The forecast is about to change, check it sooner
+                        SyncScheduler.onAlert(this);
+                    } catch (JSONException e) {
+                        // JSON parsing failed, so we just let this message go, since GCM is not one
+                        // of our critical features.
+                    }
                 }
             }
             Log.i(TAG, "Received: " + data.toString());
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.muzei;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import pe.asomapps.udacity.goubiquitous.Utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of the condition images shown by Muzei, downscaled to the size of the screen.
+ *
+ * The originals are several megabytes each, and Muzei would download one every time the weather
+ * changes. Each image is downloaded once instead, stored just big enough to cover the screen and
+ * handed to Muzei through {@link MuzeiArtworkProvider}. The cache keeps its hit rate and the bytes
+ * Muzei didn't have to download, so they can be checked in the log.
+ */
+public class MuzeiArtworkCache {
+    private static final String LOG_TAG = MuzeiArtworkCache.class.getSimpleName();
+
+    private static final String DIRECTORY_NAME = "muzei";
+    private static final String PREFS_NAME = "muzei_artwork";
+    private static final String PREF_HITS = "hits";
+    private static final String PREF_MISSES = "misses";
+    private static final String PREF_BYTES_DOWNLOADED = "bytes_downloaded";
+    private static final String PREF_BYTES_SAVED = "bytes_saved";
+    // Followed by the name of the entry
+    private static final String PREF_ORIGINAL_BYTES = "original_bytes_";
+
+    // There are only a dozen condition images, a few more sizes are kept for rotations
+    private static final int MAX_ENTRIES = 24;
+    private static final int JPEG_QUALITY = 90;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final File mDirectory;
+    private final SharedPreferences mPrefs;
+    private final int mTargetSize;
+
+    /**
+     * @param context used to find the screen size, the cache directory and the statistics
+     */
+    public MuzeiArtworkCache(Context context) {
+        this(getDirectory(context),
+                context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                getTargetSize(context));
+    }
+
+    /**
+     * @param targetSize the size both sides of the stored images cover, unless the original is
+     *                   smaller
+     */
+    MuzeiArtworkCache(File directory, SharedPreferences prefs, int targetSize) {
+        mDirectory = directory;
+        mPrefs = prefs;
+        mTargetSize = targetSize;
+    }
+
+    static File getDirectory(Context context) {
+        return new File(context.getCacheDir(), DIRECTORY_NAME);
+    }
+
+    /**
+     * The wallpaper scrolls and rotates, so the image has to cover the long side of the screen
+     * both ways.
+     */
+    private static int getTargetSize(Context context) {
+        return Math.max(context.getResources().getDisplayMetrics().widthPixels,
+                context.getResources().getDisplayMetrics().heightPixels);
+    }
+
+    /**
+     * Returns the local copy of the image, downloading and downscaling it the first time.
+     *
+     * @return the content URI to hand over to Muzei, or null if the image couldn't be downloaded
+     */
+    public synchronized Uri getArtworkUri(String imageUrl) {
+        String name = getName(imageUrl);
+        File file = new File(mDirectory, name);
+        if (file.exists()) {
+            // Muzei would have downloaded the whole original again
+            long originalBytes = mPrefs.getLong(PREF_ORIGINAL_BYTES + name, 0);
+            mPrefs.edit()
+                    .putInt(PREF_HITS, getHitCount() + 1)
+                    .putLong(PREF_BYTES_SAVED, getBytesSaved() + originalBytes)
+                    .apply();
+            file.setLastModified(System.currentTimeMillis());
+            logStatistics();
+            return MuzeiArtworkProvider.buildArtworkUri(name);
+        }
+
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Unable to create " + mDirectory);
+            return null;
+        }
+        File downloadFile = new File(mDirectory, name + ".download");
+        File tmpFile = new File(mDirectory, name + ".tmp");
+        try {
+            long originalBytes = download(imageUrl, downloadFile);
+            if (!downscale(downloadFile, tmpFile) || !tmpFile.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to store " + imageUrl);
+                return null;
+            }
+            mPrefs.edit()
+                    .putInt(PREF_MISSES, getMissCount() + 1)
+                    .putLong(PREF_BYTES_DOWNLOADED, getBytesDownloaded() + originalBytes)
+                    .putLong(PREF_ORIGINAL_BYTES + name, originalBytes)
+                    .apply();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error downloading " + imageUrl, e);
+            return null;
+        } finally {
+            downloadFile.delete();
+            tmpFile.delete();
+        }
+        trim();
+        logStatistics();
+        return MuzeiArtworkProvider.buildArtworkUri(name);
+    }
+
+    public synchronized int getHitCount() {
+        return mPrefs.getInt(PREF_HITS, 0);
+    }
+
+    public synchronized int getMissCount() {
+        return mPrefs.getInt(PREF_MISSES, 0);
+    }
+
+    /**
+     * @return the bytes of the originals downloaded by the cache
+     */
+    public synchronized long getBytesDownloaded() {
+        return mPrefs.getLong(PREF_BYTES_DOWNLOADED, 0);
+    }
+
+    /**
+     * @return the bytes of the originals served from the cache instead of downloaded again
+     */
+    public synchronized long getBytesSaved() {
+        return mPrefs.getLong(PREF_BYTES_SAVED, 0);
+    }
+
+    private void logStatistics() {
+        int hits = getHitCount();
+        int requests = hits + getMissCount();
+        Log.d(LOG_TAG, "Artwork cache: " + hits + "/" + requests + " hits, "
+                + getBytesDownloaded() + " bytes downloaded, " + getBytesSaved() + " bytes saved");
+    }
+
+    /**
+     * @return the size of the original
+     */
+    private static long download(String imageUrl, File file) throws IOException {
+        HttpURLConnection urlConnection = (HttpURLConnection) new URL(imageUrl).openConnection();
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            int responseCode = urlConnection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Unexpected response " + responseCode + " for " + imageUrl);
+            }
+            in = urlConnection.getInputStream();
+            out = new FileOutputStream(file);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long total = 0;
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                total += count;
+            }
+            return total;
+        } finally {
+            Utility.closeQuietly(in);
+            Utility.closeQuietly(out);
+            urlConnection.disconnect();
+        }
+    }
+
+    /**
+     * Stores the image as a JPEG whose sides both cover the target size, keeping its aspect
+     * ratio. Images already smaller are only recompressed.
+     *
+     * @return false if the original couldn't be decoded
+     */
+    private boolean downscale(File original, File file) throws IOException {
+        // Decode a power of two smaller first, so the full original is never in memory
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(original.getPath(), options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return false;
+        }
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        options.inSampleSize = 1;
+        while (shortSide / (options.inSampleSize * 2) >= mTargetSize) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeFile(original.getPath(), options);
+        if (bitmap == null) {
+            return false;
+        }
+
+        float scale = (float) mTargetSize / Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (scale < 1) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.round(bitmap.getWidth() * scale),
+                    Math.round(bitmap.getHeight() * scale), true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        OutputStream out = new FileOutputStream(file);
+        try {
+            return bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } finally {
+            out.close();
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Deletes the least recently used images over {@link #MAX_ENTRIES}.
+     */
+    private void trim() {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (int i = 0; i < files.length - MAX_ENTRIES; i++) {
+            editor.remove(PREF_ORIGINAL_BYTES + files[i].getName());
+            files[i].delete();
+        }
+        editor.apply();
+    }
+
+    /**
+     * The same image stored for another screen size is another entry.
+     */
+    private String getName(String imageUrl) {
+        return Utility.hashKey(imageUrl) + "_" + mTargetSize + ".jpg";
+    }
+}
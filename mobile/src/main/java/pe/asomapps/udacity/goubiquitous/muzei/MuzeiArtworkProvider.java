@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Read only provider handing the images of {@link MuzeiArtworkCache} over to Muzei. It is
+ * exported so Muzei can open them, and serves nothing but the files of the cache.
+ */
+public class MuzeiArtworkProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "pe.asomapps.udacity.goubiquitous.muzei";
+
+    private File mDirectory;
+
+    static Uri buildArtworkUri(String name) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(name)
+                .build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        mDirectory = MuzeiArtworkCache.getDirectory(getContext());
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Artwork is read only: " + uri);
+        }
+        String name = uri.getLastPathSegment();
+        // Only the files of the cache, nothing above it
+        if (name == null || uri.getPathSegments().size() != 1 || name.startsWith(".")
+                || name.indexOf('/') != -1) {
+            throw new FileNotFoundException("Unknown artwork: " + uri);
+        }
+        File file = new File(mDirectory, name);
+        if (!file.isFile()) {
+            throw new FileNotFoundException("Unknown artwork: " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Artwork is read only: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read only: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Artwork is read only: " + uri);
+    }
+}
@@ -0,0 +1,84 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.ContentValues;
+import android.text.format.Time;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Days of the forecast of one location that changed, as pushed through GCM:
+ *
+ * <pre>
+ * {"location": "94043",
+ *  "days": [{"date": 2457000, "id": 800, "main": "Clear", "max": 21.5, "min": 10.1,
+ *            "humidity": 60, "pressure": 1012.2, "speed": 3.1, "deg": 270}]}
+ * </pre>
+ *
+ * Dates are julian days and temperatures are in Celsius, like the forecasts from OpenWeatherMap.
+ */
+class ForecastDelta {
+
+    // Keys of the payload, named like their OpenWeatherMap counterparts
+    private static final String KEY_LOCATION = "location";
+    private static final String KEY_DAYS = "days";
+    private static final String KEY_DATE = "date";
+    private static final String KEY_WEATHER_ID = "id";
+    private static final String KEY_DESCRIPTION = "main";
+    private static final String KEY_MAX = "max";
+    private static final String KEY_MIN = "min";
+    private static final String KEY_HUMIDITY = "humidity";
+    private static final String KEY_PRESSURE = "pressure";
+    private static final String KEY_WIND_SPEED = "speed";
+    private static final String KEY_WIND_DIRECTION = "deg";
+
+    final String locationSetting;
+
+    /** Rows of the changed days, without their location key. */
+    final List<ContentValues> days;
+
+    private ForecastDelta(String locationSetting, List<ContentValues> days) {
+        this.locationSetting = locationSetting;
+        this.days = days;
+    }
+
+    static ForecastDelta parse(String json) throws JSONException {
+        JSONObject deltaJson = new JSONObject(json);
+        JSONArray daysJson = deltaJson.getJSONArray(KEY_DAYS);
+
+        // we work exclusively in UTC
+        Time dayTime = new Time();
+        List<ContentValues> days = new ArrayList<ContentValues>(daysJson.length());
+        for (int i = 0; i < daysJson.length(); i++) {
+            JSONObject dayJson = daysJson.getJSONObject(i);
+
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    dayTime.setJulianDay(dayJson.getInt(KEY_DATE)));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    dayJson.getInt(KEY_HUMIDITY));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    dayJson.getDouble(KEY_PRESSURE));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                    dayJson.getDouble(KEY_WIND_SPEED));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                    dayJson.getDouble(KEY_WIND_DIRECTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                    dayJson.getDouble(KEY_MAX));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                    dayJson.getDouble(KEY_MIN));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                    dayJson.getString(KEY_DESCRIPTION));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    dayJson.getInt(KEY_WEATHER_ID));
+            days.add(weatherValues);
+        }
+        return new ForecastDelta(deltaJson.getString(KEY_LOCATION), days);
+    }
+}
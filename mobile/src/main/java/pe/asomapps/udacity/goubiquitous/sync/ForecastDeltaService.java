@@ -0,0 +1,171 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.app.IntentService;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.text.format.Time;
+import android.util.Log;
+
+import pe.asomapps.udacity.goubiquitous.Utility;
+import pe.asomapps.udacity.goubiquitous.data.LocationRegistry;
+import pe.asomapps.udacity.goubiquitous.data.TodayForecastCache;
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Writes the {@link ForecastDelta}s pushed through GCM, without asking OpenWeatherMap.
+ *
+ * Deltas are queued as soon as they arrive, and the ones of a burst are merged and written
+ * together: a single bulk insert, in a single transaction, followed by a single round of
+ * notifications, just like a sync.
+ */
+public class ForecastDeltaService extends IntentService {
+    private static final String LOG_TAG = ForecastDeltaService.class.getSimpleName();
+
+    private static final String EXTRA_DELTA = "delta";
+
+    // How long to wait for the rest of a burst before writing
+    private static final long COALESCE_WINDOW_MILLIS = 2 * 1000;
+
+    // Latest values of every day waiting to be written, by location and then normalized date
+    private final Map<String, Map<Long, ContentValues>> mPending =
+            new LinkedHashMap<String, Map<Long, ContentValues>>();
+
+    public ForecastDeltaService() {
+        super("ForecastDeltaService");
+    }
+
+    /**
+     * Queues a delta received in a GCM message.
+     *
+     * @param json the delta, as described in {@link ForecastDelta}
+     */
+    public static void enqueue(Context context, String json) {
+        context.startService(new Intent(context, ForecastDeltaService.class)
+                .putExtra(EXTRA_DELTA, json));
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Runs as soon as the delta arrives, even while a previous burst is being written
+        if (intent != null && intent.hasExtra(EXTRA_DELTA)) {
+            try {
+                addPending(ForecastDelta.parse(intent.getStringExtra(EXTRA_DELTA)));
+            } catch (JSONException e) {
+                Log.e(LOG_TAG, "Ignoring invalid forecast delta", e);
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    private void addPending(ForecastDelta delta) {
+        synchronized (mPending) {
+            Map<Long, ContentValues> days = mPending.get(delta.locationSetting);
+            if (days == null) {
+                days = new LinkedHashMap<Long, ContentValues>();
+                mPending.put(delta.locationSetting, days);
+            }
+            for (ContentValues values : delta.days) {
+                days.put(WeatherContract.normalizeDate(
+                        values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)), values);
+            }
+        }
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        synchronized (mPending) {
+            if (mPending.isEmpty()) {
+                // Already written along with an earlier delta of the burst
+                return;
+            }
+        }
+        SystemClock.sleep(COALESCE_WINDOW_MILLIS);
+
+        Map<String, Map<Long, ContentValues>> pending;
+        synchronized (mPending) {
+            pending = new LinkedHashMap<String, Map<Long, ContentValues>>(mPending);
+            mPending.clear();
+        }
+        applyDeltas(pending);
+    }
+
+    private void applyDeltas(Map<String, Map<Long, ContentValues>> pending) {
+        ContentResolver resolver = getContentResolver();
+        String preferredLocation = Utility.getPreferredLocation(this);
+        int julianStartDay = SunshineSyncAdapter.getJulianStartDay();
+        long today = new Time().setJulianDay(julianStartDay);
+
+        ForecastDiff preferredDiff = null;
+        List<ForecastDiff> diffs = new ArrayList<ForecastDiff>(pending.size());
+        List<String> diffLocations = new ArrayList<String>(pending.size());
+        Vector<ContentValues> cVVector = new Vector<ContentValues>();
+        for (Map.Entry<String, Map<Long, ContentValues>> entry : pending.entrySet()) {
+            String locationSetting = entry.getKey();
+            long locationId = LocationRegistry.getInstance().getLocationId(this, locationSetting);
+            if (locationId == -1) {
+                // Only a sync knows the city and its coordinates
+                Log.d(LOG_TAG, "Ignoring forecast delta for unknown location " + locationSetting);
+                continue;
+            }
+
+            Vector<ContentValues> days = new Vector<ContentValues>(entry.getValue().size());
+            for (Map.Entry<Long, ContentValues> day : entry.getValue().entrySet()) {
+                // Days that are already over would be deleted by the next sync
+                if (day.getKey() >= today) {
+                    day.getValue().put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                    days.add(day.getValue());
+                }
+            }
+            if (days.isEmpty()) {
+                continue;
+            }
+
+            ForecastDiff diff = ForecastDiff.compute(resolver, days, today);
+            cVVector.addAll(diff.changedValues);
+            diffs.add(diff);
+            diffLocations.add(locationSetting);
+            if (locationSetting.equals(preferredLocation)) {
+                preferredDiff = diff;
+            }
+        }
+
+        if (cVVector.isEmpty()) {
+            return;
+        }
+        ContentValues[] cvArray = new ContentValues[cVVector.size()];
+        cVVector.toArray(cvArray);
+        TodayForecastCache todayCache = TodayForecastCache.getInstance();
+        int generation = todayCache.getGeneration();
+        resolver.bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+
+        for (int i = 0; i < diffs.size(); i++) {
+            ContentValues todayValues = diffs.get(i).getChangedValues(today);
+            if (todayValues != null) {
+                todayCache.put(diffLocations.get(i), julianStartDay,
+                        TodayForecastCache.TodayForecast.fromValues(todayValues), generation);
+            }
+        }
+        Log.d(LOG_TAG, "Forecast deltas applied, " + cVVector.size() + " days written");
+
+        // Widgets, Muzei and the wearables only show the preferred location
+        if (preferredDiff == null || preferredDiff.changedDates.length == 0) {
+            return;
+        }
+        SunshineSyncAdapter.updateWidgets(this, preferredDiff.changedDates);
+        if (preferredDiff.isDateChanged(today)) {
+            SunshineSyncAdapter.updateMuzei(this);
+        }
+        SunshineSyncAdapter.notifyWearables(this, WearablePublisher.getInstance(this), today);
+    }
+}
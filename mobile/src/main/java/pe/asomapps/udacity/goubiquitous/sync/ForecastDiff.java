@@ -0,0 +1,145 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * Compares a freshly parsed forecast with the rows already stored for the location, keeping
+ * only the days that are new or whose values changed.
+ */
+class ForecastDiff {
+
+    /**
+     * Columns read from the stored rows, the date followed by every column compared.
+     */
+    static final String[] PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_FIRST_COMPARED = 1;
+
+    /** Rows to write, in the order they were parsed. */
+    final Vector<ContentValues> changedValues;
+
+    /** Normalized dates of the rows to write, sorted. */
+    final long[] changedDates;
+
+    private ForecastDiff(Vector<ContentValues> changedValues, long[] changedDates) {
+        this.changedValues = changedValues;
+        this.changedDates = changedDates;
+    }
+
+    /**
+     * Compares the parsed days of a location with what is stored for it, from today on.
+     *
+     * @param parsed the parsed rows, all of them for the same location
+     */
+    static ForecastDiff compute(ContentResolver resolver, Vector<ContentValues> parsed, long today) {
+        long locationId = parsed.get(0).getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+        Cursor current = resolver.query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                PROJECTION,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " >= ?",
+                new String[] {Long.toString(locationId), Long.toString(today)},
+                null);
+        try {
+            return compute(current, parsed);
+        } finally {
+            if (current != null) {
+                current.close();
+            }
+        }
+    }
+
+    /**
+     * @param current the stored rows for the location, read with {@link #PROJECTION}. It is
+     *                not closed.
+     * @param parsed  the parsed rows, dates don't need to be normalized
+     */
+    static ForecastDiff compute(Cursor current, Vector<ContentValues> parsed) {
+        Map<Long, ContentValues> pending = new HashMap<Long, ContentValues>(parsed.size() * 2);
+        for (ContentValues values : parsed) {
+            pending.put(WeatherContract.normalizeDate(
+                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE)), values);
+        }
+
+        if (current != null && current.moveToFirst()) {
+            do {
+                long date = current.getLong(INDEX_DATE);
+                ContentValues values = pending.get(date);
+                if (values != null && isSameDay(current, values)) {
+                    pending.remove(date);
+                }
+            } while (current.moveToNext());
+        }
+
+        Vector<ContentValues> changedValues = new Vector<ContentValues>(pending.size());
+        long[] changedDates = new long[pending.size()];
+        int i = 0;
+        for (ContentValues values : parsed) {
+            long date = WeatherContract.normalizeDate(
+                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+            if (pending.containsKey(date)) {
+                changedValues.add(values);
+                changedDates[i++] = date;
+            }
+        }
+        Arrays.sort(changedDates);
+        return new ForecastDiff(changedValues, changedDates);
+    }
+
+    boolean isDateChanged(long normalizedDate) {
+        return Arrays.binarySearch(changedDates, normalizedDate) >= 0;
+    }
+
+    /**
+     * @return the values written for the day, or null if the day didn't change
+     */
+    ContentValues getChangedValues(long normalizedDate) {
+        for (ContentValues values : changedValues) {
+            if (WeatherContract.normalizeDate(values.getAsLong(
+                    WeatherContract.WeatherEntry.COLUMN_DATE)) == normalizedDate) {
+                return values;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isSameDay(Cursor current, ContentValues values) {
+        for (int i = INDEX_FIRST_COMPARED; i < PROJECTION.length; i++) {
+            Object value = values.get(PROJECTION[i]);
+            if (value == null || current.isNull(i)) {
+                if (value != null || !current.isNull(i)) {
+                    return false;
+                }
+            } else if (value instanceof Number) {
+                // Compared as doubles, which is how the REAL columns keep them
+                if (((Number) value).doubleValue() != current.getDouble(i)) {
+                    return false;
+                }
+            } else if (!value.toString().equals(current.getString(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,258 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONException;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Pull parser for the OpenWeatherMap daily forecast response.
+ *
+ * Instead of buffering the whole document into a String and building an org.json tree, this
+ * reads straight off the connection stream and hands every element of the "list" array to a
+ * {@link Callback} as soon as it is complete. Only one day's record is alive at any time.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+public class ForecastParser {
+
+    // Location information
+    private static final String OWM_CITY = "city";
+    private static final String OWM_CITY_NAME = "name";
+    private static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    private static final String OWM_LATITUDE = "lat";
+    private static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    private static final String OWM_LIST = "list";
+
+    private static final String OWM_PRESSURE = "pressure";
+    private static final String OWM_HUMIDITY = "humidity";
+    private static final String OWM_WINDSPEED = "speed";
+    private static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    private static final String OWM_TEMPERATURE = "temp";
+    private static final String OWM_MAX = "max";
+    private static final String OWM_MIN = "min";
+
+    private static final String OWM_WEATHER = "weather";
+    private static final String OWM_DESCRIPTION = "main";
+    private static final String OWM_WEATHER_ID = "id";
+
+    private static final String OWM_MESSAGE_CODE = "cod";
+
+    // Columns every day of the forecast must provide, as they are NOT NULL in the database.
+    private static final String[] REQUIRED_DAY_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    /**
+     * Receives the pieces of the forecast while the document is being read.
+     */
+    public interface Callback {
+        /**
+         * Called once the "city" object has been read. OWM sends it before the "list" array, but
+         * callers must not rely on that ordering.
+         */
+        void onCity(String cityName, double lat, double lon);
+
+        /**
+         * Called for each completed element of the "list" array. The values hold every weather
+         * column except {@link WeatherContract.WeatherEntry#COLUMN_LOC_KEY} and
+         * {@link WeatherContract.WeatherEntry#COLUMN_DATE}, which depend on the caller.
+         *
+         * @param dayIndex position of the day in the forecast, 0 being today
+         */
+        void onDay(int dayIndex, ContentValues weatherValues);
+    }
+
+    /**
+     * Parses the forecast from the given stream, using UTF-8 as OWM does.
+     *
+     * @return the "cod" value of the response, or {@link HttpURLConnection#HTTP_OK} if missing
+     */
+    public int parse(InputStream inputStream, Callback callback) throws IOException, JSONException {
+        return parse(new InputStreamReader(inputStream, "UTF-8"), callback);
+    }
+
+    /**
+     * Parses the forecast from the given reader. The reader is not closed.
+     *
+     * @return the "cod" value of the response, or {@link HttpURLConnection#HTTP_OK} if missing
+     */
+    public int parse(Reader in, Callback callback) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(in);
+        int messageCode = HttpURLConnection.HTTP_OK;
+        boolean cityFound = false;
+        boolean listFound = false;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    messageCode = reader.nextInt();
+                    if (messageCode != HttpURLConnection.HTTP_OK) {
+                        // Error responses don't carry a forecast, no need to read any further
+                        return messageCode;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, callback);
+                    cityFound = true;
+                } else if (OWM_LIST.equals(name)) {
+                    readList(reader, callback);
+                    listFound = true;
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            // JsonReader reports unexpected tokens with unchecked exceptions, translate them to
+            // the same error the org.json based parsing used to report.
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+
+        if (!cityFound) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        if (!listFound) {
+            throw new JSONException("No value for " + OWM_LIST);
+        }
+        return messageCode;
+    }
+
+    private void readCity(JsonReader reader, Callback callback) throws IOException, JSONException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (cityName == null) {
+            throw new JSONException("No value for " + OWM_CITY_NAME);
+        }
+        callback.onCity(cityName, lat, lon);
+    }
+
+    private void readList(JsonReader reader, Callback callback) throws IOException, JSONException {
+        int dayIndex = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            ContentValues weatherValues = readDay(reader);
+            for (String column : REQUIRED_DAY_COLUMNS) {
+                if (!weatherValues.containsKey(column)) {
+                    throw new JSONException("No value for " + column + " in day " + dayIndex);
+                }
+            }
+            callback.onDay(dayIndex++, weatherValues);
+        }
+        reader.endArray();
+    }
+
+    private ContentValues readDay(JsonReader reader) throws IOException {
+        ContentValues weatherValues = new ContentValues();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, reader.nextDouble());
+            } else if (OWM_HUMIDITY.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, reader.nextInt());
+            } else if (OWM_WINDSPEED.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, reader.nextDouble());
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, reader.nextDouble());
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                // Temperatures are in a child object called "temp".
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperatureName = reader.nextName();
+                    if (OWM_MAX.equals(temperatureName)) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, reader.nextDouble());
+                    } else if (OWM_MIN.equals(temperatureName)) {
+                        weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, reader.nextDouble());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    readWeather(reader, weatherValues);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return weatherValues;
+    }
+
+    private void readWeather(JsonReader reader, ContentValues weatherValues) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_DESCRIPTION.equals(name) && reader.peek() == JsonToken.STRING) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, reader.nextString());
+            } else if (OWM_WEATHER_ID.equals(name)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, reader.nextInt());
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+}
@@ -0,0 +1,403 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.util.Log;
+
+import pe.asomapps.udacity.goubiquitous.Utility;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Keeps the last forecast payload received for every request URL on disk, so the next sync can
+ * send a conditional GET and tell whether the forecast really changed before storing anything.
+ *
+ * The URL holds the location query (or the lat/lon pair), so every location gets its own entry.
+ * Entries also remember the julian day they were stored on: the rows built from a payload depend
+ * on the day it is parsed, so an identical payload from a previous day still has to be processed.
+ *
+ * A payload is never held in memory: it is parsed straight from the connection while being
+ * written to the cache and digested, and the digest is what tells identical payloads apart.
+ */
+public class ForecastResponseCache {
+    private static final String LOG_TAG = ForecastResponseCache.class.getSimpleName();
+
+    private static final int FILE_VERSION = 2;
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File mDirectory;
+
+    /**
+     * Result of a {@link #fetch(URL, int)}. The body has to be read, if needed, and the response
+     * closed before it is committed.
+     */
+    public class Response implements Closeable {
+        final String key;
+        final String eTag;
+        final String lastModified;
+
+        /** True when the server answered 304, the body is then the one in the cache. */
+        public final boolean notModified;
+
+        private final Entry mEntry;
+        private final int mJulianDay;
+        private final HttpURLConnection mConnection;
+        private final SyncTrace mTrace;
+
+        // The payload as it is read, and where it is copied to
+        private InputStream mBody;
+        private DownloadInputStream mDownload;
+        private OutputStream mBodyOut;
+        private MessageDigest mDigest;
+
+        private boolean mFinished;
+        // Set once the whole payload has been read, copied and digested
+        private byte[] mBodyDigest;
+
+        Response(String key, HttpURLConnection connection, Entry entry, int julianDay,
+                 boolean notModified, SyncTrace trace) {
+            this.key = key;
+            this.eTag = notModified ? entry.eTag : connection.getHeaderField("ETag");
+            this.lastModified = notModified
+                    ? entry.lastModified : connection.getHeaderField("Last-Modified");
+            this.notModified = notModified;
+            mEntry = entry;
+            mJulianDay = julianDay;
+            mConnection = connection;
+            mTrace = trace;
+        }
+
+        /**
+         * The payload to parse, either being downloaded or read back from the cache. It is
+         * copied to the cache as it is read, so it must only be read once.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBody != null) {
+                return mBody;
+            }
+            if (notModified) {
+                mBody = new FileInputStream(getBodyFile(key));
+                return mBody;
+            }
+            mDigest = createDigest();
+            File tmpFile = getTmpBodyFile(key);
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Unable to create " + mDirectory);
+            }
+            mBodyOut = new FileOutputStream(tmpFile);
+            mDownload = new DownloadInputStream(mConnection.getInputStream(), mBodyOut);
+            mBody = new DigestInputStream(mDownload, mDigest);
+            return mBody;
+        }
+
+        /**
+         * True when the server answered 304, or sent the same bytes as last time, and what is
+         * stored was stored today. There's nothing to store or notify in that case. For a new
+         * payload, whatever is left of it is read first.
+         */
+        public boolean isUnchanged() {
+            if (mEntry == null || mEntry.julianDay != mJulianDay) {
+                return false;
+            }
+            if (notModified) {
+                return true;
+            }
+            finish();
+            if (mBodyDigest == null || !Arrays.equals(mEntry.digest, mBodyDigest)) {
+                return false;
+            }
+            // The cached copy is the same, this one isn't needed
+            getTmpBodyFile(key).delete();
+            return true;
+        }
+
+        /**
+         * Reads what the parser left of the payload, so all of it is cached, and releases the
+         * connection.
+         */
+        @Override
+        public void close() {
+            finish();
+        }
+
+        private void finish() {
+            if (mFinished) {
+                return;
+            }
+            mFinished = true;
+            try {
+                if (!notModified) {
+                    InputStream body = getBody();
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    while (body.read(buffer) != -1) {
+                        // only copied and digested
+                    }
+                    mBodyOut.close();
+                    mBodyOut = null;
+                    mBodyDigest = mDigest.digest();
+                    if (mTrace != null) {
+                        mTrace.addNanos(SyncTrace.STAGE_DOWNLOAD, mDownload.readNanos);
+                        mTrace.addResponse((int) mDownload.count, false);
+                    }
+                }
+            } catch (IOException e) {
+                // Not committed, the next sync downloads it again
+                Log.e(LOG_TAG, "Error reading forecast for " + key, e);
+            } finally {
+                Utility.closeQuietly(mBodyOut);
+                Utility.closeQuietly(mBody);
+                mConnection.disconnect();
+            }
+        }
+    }
+
+    private static class Entry {
+        String eTag;
+        String lastModified;
+        int julianDay;
+        byte[] digest;
+    }
+
+    /**
+     * Copies what is read to the cache file, counting the bytes and the time spent waiting on
+     * the network.
+     */
+    private static class DownloadInputStream extends FilterInputStream {
+        private final OutputStream mOut;
+        long count;
+        long readNanos;
+
+        DownloadInputStream(InputStream in, OutputStream out) {
+            super(in);
+            mOut = out;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long startNanos = System.nanoTime();
+            int b = super.read();
+            readNanos += System.nanoTime() - startNanos;
+            if (b != -1) {
+                mOut.write(b);
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            long startNanos = System.nanoTime();
+            int read = super.read(buffer, offset, length);
+            readNanos += System.nanoTime() - startNanos;
+            if (read > 0) {
+                mOut.write(buffer, offset, read);
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must be copied too
+            byte[] buffer = new byte[(int) Math.min(n, BUFFER_SIZE)];
+            int read = read(buffer, 0, buffer.length);
+            return read < 0 ? 0 : read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    public ForecastResponseCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Requests the given URL, adding the validators of the cached entry if there is one.
+     *
+     * @param julianDay the day the payload would be parsed for
+     * @throws IOException if the request fails, or the server answered 304 for an entry we no
+     *                     longer have
+     */
+    public Response fetch(URL url, int julianDay) throws IOException {
+        return fetch(url, julianDay, null);
+    }
+
+    /**
+     * Same as {@link #fetch(URL, int)}, adding the time spent connecting and downloading to the
+     * trace of the sync, if there is one.
+     */
+    public Response fetch(URL url, int julianDay, SyncTrace trace) throws IOException {
+        String key = url.toString();
+        Entry entry = read(key);
+
+        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+        boolean connected = false;
+        try {
+            urlConnection.setRequestMethod("GET");
+            if (entry != null) {
+                if (entry.eTag != null) {
+                    urlConnection.setRequestProperty("If-None-Match", entry.eTag);
+                }
+                if (entry.lastModified != null) {
+                    urlConnection.setRequestProperty("If-Modified-Since", entry.lastModified);
+                }
+            }
+            long startNanos = System.nanoTime();
+            urlConnection.connect();
+            int responseCode = urlConnection.getResponseCode();
+            if (trace != null) {
+                trace.addTime(SyncTrace.STAGE_CONNECT, startNanos);
+            }
+
+            boolean notModified = responseCode == HttpURLConnection.HTTP_NOT_MODIFIED;
+            if (notModified) {
+                if (trace != null) {
+                    trace.addResponse(0, true);
+                }
+                if (entry == null || !getBodyFile(key).exists()) {
+                    throw new IOException("Not modified, but there's no cached forecast for " + key);
+                }
+            }
+            connected = true;
+            return new Response(key, urlConnection, entry, julianDay, notModified, trace);
+        } finally {
+            if (!connected) {
+                urlConnection.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Remembers the response once its forecast has been stored. Responses that couldn't be
+     * stored must not be committed, or the next identical one would be skipped.
+     */
+    public void commit(Response response, int julianDay) {
+        response.close();
+        if (response.isUnchanged()) {
+            return;
+        }
+        byte[] digest;
+        if (response.notModified) {
+            // Same payload, only the day it was stored on changes
+            digest = response.mEntry.digest;
+        } else if (response.mBodyDigest != null) {
+            File bodyFile = getBodyFile(response.key);
+            if (!getTmpBodyFile(response.key).renameTo(bodyFile)) {
+                Log.w(LOG_TAG, "Unable to write " + bodyFile);
+                return;
+            }
+            digest = response.mBodyDigest;
+        } else {
+            // The payload wasn't read whole
+            return;
+        }
+
+        File file = getFile(response.key);
+        File tmpFile = new File(file.getPath() + TMP_SUFFIX);
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmpFile));
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(response.eTag != null ? response.eTag : "");
+            out.writeUTF(response.lastModified != null ? response.lastModified : "");
+            out.writeInt(julianDay);
+            out.writeInt(digest.length);
+            out.write(digest);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to write " + file);
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching forecast for " + response.key, e);
+            tmpFile.delete();
+        } finally {
+            Utility.closeQuietly(out);
+        }
+    }
+
+    /**
+     * Drops every cached response, forcing the next sync of every location to process the
+     * forecast again.
+     */
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private Entry read(String key) {
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            if (in.readInt() != FILE_VERSION) {
+                return null;
+            }
+            Entry entry = new Entry();
+            entry.eTag = emptyToNull(in.readUTF());
+            entry.lastModified = emptyToNull(in.readUTF());
+            entry.julianDay = in.readInt();
+            entry.digest = new byte[in.readInt()];
+            in.readFully(entry.digest);
+            return entry;
+        } catch (IOException e) {
+            // A broken entry just means a full download
+            Log.w(LOG_TAG, "Ignoring unreadable cache entry " + file, e);
+            file.delete();
+            return null;
+        } finally {
+            Utility.closeQuietly(in);
+        }
+    }
+
+    private File getFile(String key) {
+        return new File(mDirectory, Utility.hashKey(key));
+    }
+
+    private File getBodyFile(String key) {
+        return new File(mDirectory, Utility.hashKey(key) + BODY_SUFFIX);
+    }
+
+    private File getTmpBodyFile(String key) {
+        return new File(mDirectory, Utility.hashKey(key) + BODY_SUFFIX + TMP_SUFFIX);
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // Guaranteed to exist on every Android device
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.length() == 0 ? null : value;
+    }
+}
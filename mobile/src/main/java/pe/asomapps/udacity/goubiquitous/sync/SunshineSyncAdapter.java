@@ -3,15 +3,18 @@ package pe.asomapps.udacity.goubiquitous.sync;
 import android.accounts.Account;
 import android.accounts.AccountManager;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
@@ -22,27 +25,24 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.annotation.NonNull;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
+import android.util.MalformedJsonException;
 
 import com.bumptech.glide.Glide;
 import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
 import pe.asomapps.udacity.goubiquitous.BuildConfig;
 import pe.asomapps.udacity.goubiquitous.MainActivity;
 import pe.asomapps.udacity.goubiquitous.R;
 import pe.asomapps.udacity.goubiquitous.Utility;
+import pe.asomapps.udacity.goubiquitous.data.LocationRegistry;
+import pe.asomapps.udacity.goubiquitous.data.TodayForecastCache;
 import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
 import pe.asomapps.udacity.goubiquitous.muzei.WeatherMuzeiSource;
 
@@ -51,42 +51,50 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Random;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
+    // Normalized dates of the days written by the update, sorted. Days can also be removed
+    // when they are over, in which case the array may be empty. Left out when every day may
+    // have changed, like on the first sync of a new day.
+    public static final String EXTRA_CHANGED_DATES =
+            "com.example.android.sunshine.app.EXTRA_CHANGED_DATES";
+    // Interval at which to sync with the weather, in seconds, until the SyncScheduler adapts it.
     // 60 seconds (1 minute) * 60 = 1 hour
     public static final int SYNC_INTERVAL = BuildConfig.DEBUG ? 10 : 60 * 60;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // Julian day of the last sync that stored the preferred location
+    private static final String PREF_LAST_SYNC_DAY = "last_sync_day";
+    // Number of days of forecast requested to OpenWeatherMap
+    private static final int NUM_DAYS = 14;
+    // Number of locations whose forecast is downloaded at the same time
+    static final int MAX_PARALLEL_FETCHES = 4;
+    private static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    // Tests point this to a local server
+    static String sForecastBaseUrl = FORECAST_BASE_URL;
 
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
-
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
     public @interface LocationStatus {}
@@ -97,125 +105,346 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    private GoogleApiClient googleClient;
+    private final ForecastResponseCache mResponseCache;
+    private final WearablePublisher mWearablePublisher;
+    // Trace of the sync running, shared by the threads fetching the locations
+    private SyncTrace mTrace;
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
 
-        googleClient = new GoogleApiClient.Builder(getContext()).addApi(Wearable.API).build();
-        googleClient.connect();
+        mResponseCache = new ForecastResponseCache(new File(context.getCacheDir(), "forecast"));
+
+        // Shared with ForecastDeltaService, so their pushes are coalesced too
+        mWearablePublisher = WearablePublisher.getInstance(context);
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
-        Log.d(LOG_TAG, "Starting sync");
+        SyncRequestCoordinator coordinator = SyncRequestCoordinator.getInstance();
+        int reasons = coordinator.onSyncStarted(account.name,
+                Utility.getPreferredLocation(getContext()));
+        Log.d(LOG_TAG, "Starting sync, reasons " + reasons);
+        int lateReasons;
+        try {
+            syncLocations(getSyncLocations(getContext()), MAX_PARALLEL_FETCHES, reasons);
+        } finally {
+            lateReasons = coordinator.onSyncFinished();
+        }
+        if (lateReasons != 0) {
+            // Requested while this sync ran, maybe after its forecast was fetched
+            Log.d(LOG_TAG, "Syncing again, reasons " + lateReasons);
+            syncImmediately(getContext(), lateReasons);
+        }
+    }
+
+    /**
+     * Returns the preferred location followed by the other tracked locations, without duplicates.
+     */
+    static List<String> getSyncLocations(Context context) {
+        List<String> locations = new ArrayList<String>();
+        locations.add(Utility.getPreferredLocation(context));
+        for (String trackedLocation : Utility.getTrackedLocations(context)) {
+            if (!locations.contains(trackedLocation)) {
+                locations.add(trackedLocation);
+            }
+        }
+        return locations;
+    }
+
+    /**
+     * Fetches the forecast of every location, at most {@code parallelism} at a time, and then
+     * stores all of them together.
+     */
+    void syncLocations(List<String> locationSettings, int parallelism) {
+        syncLocations(locationSettings, parallelism, 0);
+    }
 
+    /**
+     * Same as {@link #syncLocations(List, int)}, for the given
+     * {@link SyncRequestCoordinator} reasons.
+     */
+    void syncLocations(List<String> locationSettings, int parallelism, int reasons) {
         // We no longer need just the location String, but also potentially the latitude and
         // longitude, in case we are syncing based on a new Place Picker API result.
         Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
-        String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
-
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        String preferredLocation = Utility.getPreferredLocation(context);
+        boolean latLonAvailable = Utility.isLocationLatLonAvailable(context);
+
+        final int julianStartDay = getJulianStartDay();
+        mTrace = new SyncTrace();
+        mTrace.setLocations(locationSettings.size());
+        List<LocationForecast> forecasts = new ArrayList<LocationForecast>(locationSettings.size());
+        for (String locationSetting : locationSettings) {
+            LocationForecast forecast = new LocationForecast(locationSetting);
+            if (latLonAvailable && locationSetting.equals(preferredLocation)) {
+                forecast.latitude = String.valueOf(Utility.getLocationLatitude(context));
+                forecast.longitude = String.valueOf(Utility.getLocationLongitude(context));
+            }
+            forecasts.add(forecast);
+        }
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String LAT_PARAM = "lat";
-            final String LON_PARAM = "lon";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri.Builder uriBuilder = Uri.parse(FORECAST_BASE_URL).buildUpon();
-
-            // Instead of always building the query based off of the location string, we want to
-            // potentially build a query using a lat/lon value. This will be the case when we are
-            // syncing based off of a new location from the Place Picker API. So we need to check
-            // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
-            // service may not understand the location address provided by the Place Picker API
-            // and the user could end up with no weather! The horror!
-            if (Utility.isLocationLatLonAvailable(context)) {
-                uriBuilder.appendQueryParameter(LAT_PARAM, locationLatitude)
-                        .appendQueryParameter(LON_PARAM, locationLongitude);
-            } else {
-                uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        if (forecasts.size() == 1 || parallelism <= 1) {
+            for (LocationForecast forecast : forecasts) {
+                fetchForecast(forecast, julianStartDay);
             }
+        } else {
+            // The requests spend most of their time waiting on the network, so they overlap
+            ExecutorService executor =
+                    Executors.newFixedThreadPool(Math.min(parallelism, forecasts.size()));
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(forecasts.size());
+            for (final LocationForecast forecast : forecasts) {
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        fetchForecast(forecast, julianStartDay);
+                        return null;
+                    }
+                });
+            }
+            try {
+                executor.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                // The sync was cancelled, don't store a partial result
+                Log.d(LOG_TAG, "Sync cancelled");
+                Thread.currentThread().interrupt();
+                finishTrace(SyncTrace.OUTCOME_CANCELLED);
+                return;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
 
-            Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
+        // The forecast of the new location may already be stored, but nothing shows it yet
+        boolean locationChanged =
+                (reasons & SyncRequestCoordinator.REASON_LOCATION_CHANGED) != 0;
+        storeForecasts(forecasts, julianStartDay, locationChanged);
+    }
 
-            URL url = new URL(builtUri.toString());
+    private void finishTrace(int outcome) {
+        mTrace.finish(outcome);
+        SyncTraceLog.getInstance(getContext()).add(mTrace);
+    }
 
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
+    /**
+     * Outcome of fetching and parsing the forecast of one location.
+     */
+    private static class LocationForecast {
+        final String locationSetting;
+        // Only set when the location comes from the Place Picker
+        String latitude;
+        String longitude;
+
+        @LocationStatus int status = LOCATION_STATUS_UNKNOWN;
+        // True when the stored forecast is still current, nothing has to be written
+        boolean unchanged;
+        ForecastResponseCache.Response response;
+        // Only set when the location isn't stored yet, it is inserted along with its forecast
+        ContentValues newLocation;
+        Vector<ContentValues> cVVector;
+        ForecastDiff diff;
+
+        LocationForecast(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+    }
 
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
+    /**
+     * Downloads and parses the forecast of one location. Safe to call from several threads at
+     * once for different locations.
+     */
+    private void fetchForecast(LocationForecast forecast, int julianStartDay) {
+        try {
+            URL url = buildForecastUrl(forecast.locationSetting, forecast.latitude, forecast.longitude);
+
+            // Request the forecast, conditionally if we already have one for this location
+            ForecastResponseCache.Response response =
+                    mResponseCache.fetch(url, julianStartDay, mTrace);
+            forecast.response = response;
+            try {
+                if (response.notModified && response.isUnchanged()
+                        && hasForecastForToday(forecast.locationSetting)) {
+                    // Same forecast we already stored today: the database, widgets, Muzei, the
+                    // notification and the wearables are all up to date.
+                    forecast.unchanged = true;
+                    forecast.status = LOCATION_STATUS_OK;
+                    return;
+                }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+                // Parsed as it arrives, the cache keeps a copy and a digest on the way
+                long startNanos = System.nanoTime();
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                    // Parse the forecast without building the whole JSON tree
+                    getWeatherDataFromStream(response.getBody(), forecast, julianStartDay);
+                } else {
+                    String forecastJsonStr = readString(response.getBody());
+                    if (forecastJsonStr.length() == 0) {
+                        // Stream was empty.  No point in parsing.
+                        forecast.status = LOCATION_STATUS_SERVER_DOWN;
+                        return;
+                    }
+                    getWeatherDataFromJson(forecastJsonStr, forecast, julianStartDay);
+                }
+                mTrace.addTime(SyncTrace.STAGE_PARSE, startNanos);
+
+                if (forecast.status == LOCATION_STATUS_OK && response.isUnchanged()
+                        && hasForecastForToday(forecast.locationSetting)) {
+                    // Same bytes as last time, nothing to store or notify
+                    forecast.unchanged = true;
+                }
+            } finally {
+                response.close();
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            forecast.status = LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+
+    /**
+     * Builds the OpenWeatherMap request for a location, by lat/lon when they are given.
+     */
+    private static URL buildForecastUrl(String locationQuery, String latitude, String longitude)
+            throws MalformedURLException {
+        String format = "json";
+        String units = "metric";
+
+        // Construct the URL for the OpenWeatherMap query
+        // Possible parameters are avaiable at OWM's forecast API page, at
+        // http://openweathermap.org/API#forecast
+        final String QUERY_PARAM = "q";
+        final String LAT_PARAM = "lat";
+        final String LON_PARAM = "lon";
+        final String FORMAT_PARAM = "mode";
+        final String UNITS_PARAM = "units";
+        final String DAYS_PARAM = "cnt";
+        final String APPID_PARAM = "APPID";
+
+        Uri.Builder uriBuilder = Uri.parse(sForecastBaseUrl).buildUpon();
+
+        // Instead of always building the query based off of the location string, we want to
+        // potentially build a query using a lat/lon value. This will be the case when we are
+        // syncing based off of a new location from the Place Picker API. So we need to check
+        // if we have a lat/lon to work with, and use those when we do. Otherwise, the weather
+        // service may not understand the location address provided by the Place Picker API
+        // and the user could end up with no weather! The horror!
+        if (latitude != null && longitude != null) {
+            uriBuilder.appendQueryParameter(LAT_PARAM, latitude)
+                    .appendQueryParameter(LON_PARAM, longitude);
+        } else {
+            uriBuilder.appendQueryParameter(QUERY_PARAM, locationQuery);
+        }
+
+        Uri builtUri = uriBuilder.appendQueryParameter(FORMAT_PARAM, format)
+                .appendQueryParameter(UNITS_PARAM, units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+
+        return new URL(builtUri.toString());
+    }
+
+    /**
+     * A forecast can only be skipped when the one it matches is still in the database, which is
+     * not the case after the database has been recreated.
+     */
+    private boolean hasForecastForToday(String locationSetting) {
+        return TodayForecastCache.getInstance().get(getContext(), locationSetting) != null;
+    }
+
+    private static String readString(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+        StringBuilder buffer = new StringBuilder();
+        char[] chars = new char[4 * 1024];
+        int read;
+        while ((read = reader.read(chars)) != -1) {
+            buffer.append(chars, 0, read);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Reads the forecast with a {@link ForecastParser}, collecting the rows for the database as
+     * each day of the forecast is read.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private void getWeatherDataFromStream(InputStream inputStream, LocationForecast forecast,
+                                          int julianStartDay) throws IOException {
+        ForecastCollector collector = new ForecastCollector(forecast.locationSetting, julianStartDay);
+        try {
+            int messageCode = new ForecastParser().parse(inputStream, collector);
+
+            // do we have an error?
+            switch (messageCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    forecast.status = LOCATION_STATUS_INVALID;
+                    return;
+                default:
+                    forecast.status = LOCATION_STATUS_SERVER_DOWN;
+                    return;
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
+
+            // The city may come after the list, so the location key is filled in at the end
+            if (collector.locationId != -1) {
+                for (ContentValues weatherValues : collector.cVVector) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, collector.locationId);
                 }
             }
+            forecast.newLocation = collector.newLocation;
+            forecast.cVVector = collector.cVVector;
+            forecast.status = LOCATION_STATUS_OK;
+        } catch (JSONException | MalformedJsonException e) {
+            Log.e(LOG_TAG, e.getMessage(), e);
+            forecast.status = LOCATION_STATUS_SERVER_INVALID;
+        }
+    }
+
+    /**
+     * Collects the rows handed out by the {@link ForecastParser}, adding their dates as they come.
+     */
+    private class ForecastCollector implements ForecastParser.Callback {
+        final String locationSetting;
+        final int julianStartDay;
+        final Vector<ContentValues> cVVector = new Vector<ContentValues>(NUM_DAYS);
+        // we work exclusively in UTC
+        final Time dayTime = new Time();
+        long locationId = -1;
+        ContentValues newLocation;
+
+        ForecastCollector(String locationSetting, int julianStartDay) {
+            this.locationSetting = locationSetting;
+            this.julianStartDay = julianStartDay;
+        }
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            locationId = findLocation(locationSetting);
+            if (locationId == -1) {
+                newLocation = createLocationValues(locationSetting, cityName, lat, lon);
+            }
+        }
+
+        @Override
+        public void onDay(int dayIndex, ContentValues weatherValues) {
+            // Cheating to convert this to UTC time, which is what we want anyhow
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    dayTime.setJulianDay(julianStartDay + dayIndex));
+            cVVector.add(weatherValues);
         }
-        return;
+    }
+
+    /**
+     * OWM returns daily forecasts based upon the local time of the city that is being asked for,
+     * and the first day is always the current day, so the forecast starts at the julian day
+     * returned by local time.
+     */
+    static int getJulianStartDay() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
     }
 
     /**
@@ -226,8 +455,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * into an Object hierarchy for us.
      */
     private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
+                                        LocationForecast forecast,
+                                        int julianStartDay) {
 
         // Now we have a String representing the complete forecast in JSON Format.
         // Fortunately parsing is easy:  constructor takes the JSON string and converts it
@@ -275,10 +504,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     case HttpURLConnection.HTTP_OK:
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                        forecast.status = LOCATION_STATUS_INVALID;
                         return;
                     default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                        forecast.status = LOCATION_STATUS_SERVER_DOWN;
                         return;
                 }
             }
@@ -292,7 +521,11 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
             double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
+            long locationId = findLocation(forecast.locationSetting);
+            if (locationId == -1) {
+                forecast.newLocation = createLocationValues(forecast.locationSetting, cityName,
+                        cityLatitude, cityLongitude);
+            }
 
             // Insert the new weather information into the database
             Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
@@ -305,14 +538,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             // current day, we're going to take advantage of that to get a nice
             // normalized UTC date for all of our weather.
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+            // we start at the day returned by local time, passed in by the caller.
 
             // now we work exclusively in UTC
-            dayTime = new Time();
+            Time dayTime = new Time();
 
             for(int i = 0; i < weatherArray.length(); i++) {
                 // These are the values that will be collected.
@@ -354,7 +583,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                 ContentValues weatherValues = new ContentValues();
 
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                if (locationId != -1) {
+                    weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                }
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
                 weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
@@ -368,82 +599,240 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 cVVector.add(weatherValues);
             }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                notifyWearables();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            forecast.cVVector = cVVector;
+            forecast.status = LOCATION_STATUS_OK;
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            forecast.status = LOCATION_STATUS_SERVER_INVALID;
         }
     }
 
-    int debugCount = 0;
     /**
-     * Notifies any synced wearable that there might be new data
-     * from the current weather that needs to be handled.
+     * Stores the days that changed for every location that was fetched, removes the days that are
+     * already gone and lets everybody showing the weather of the preferred location know about
+     * what changed.
+     *
+     * @param locationChanged whether the preferred location changed since the last sync, they
+     *                        are then told about every day whether it changed or not
      */
-    private void notifyWearables() {
-        Log.d("PUTDATA", "Start sending data");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-        Cursor cursor = getContext().getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-        if (cursor==null || !cursor.moveToFirst()){
+    private void storeForecasts(List<LocationForecast> forecasts, int julianStartDay,
+                                boolean locationChanged) {
+        Context context = getContext();
+        ContentResolver resolver = context.getContentResolver();
+        String preferredLocation = Utility.getPreferredLocation(context);
+        Time dayTime = new Time();
+        long today = dayTime.setJulianDay(julianStartDay);
+
+        LocationForecast preferredForecast = null;
+        ForecastDiff preferredDiff = null;
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        int written = 0;
+        for (LocationForecast forecast : forecasts) {
+            boolean preferred = forecast.locationSetting.equals(preferredLocation);
+            if (preferred) {
+                preferredForecast = forecast;
+            }
+            if (forecast.status != LOCATION_STATUS_OK || forecast.unchanged
+                    || forecast.cVVector.isEmpty()) {
+                continue;
+            }
+            long startNanos = System.nanoTime();
+            ForecastDiff diff;
+            int locationOperation = -1;
+            if (forecast.newLocation != null) {
+                // Nothing stored yet, every day is new
+                diff = ForecastDiff.compute((Cursor) null, forecast.cVVector);
+                locationOperation = operations.size();
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.LocationEntry.CONTENT_URI)
+                        .withValues(forecast.newLocation)
+                        .build());
+            } else {
+                diff = ForecastDiff.compute(resolver, forecast.cVVector, today);
+            }
+            mTrace.addTime(SyncTrace.STAGE_DIFF, startNanos);
+
+            for (ContentValues weatherValues : diff.changedValues) {
+                ContentProviderOperation.Builder builder = ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(weatherValues);
+                if (locationOperation != -1) {
+                    builder.withValueBackReference(WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                            locationOperation);
+                }
+                operations.add(builder.build());
+            }
+            written += diff.changedValues.size();
+            forecast.diff = diff;
+            if (preferred) {
+                preferredDiff = diff;
+            }
+        }
+
+        // delete old data so we don't build up an endless history
+        int deleteOperation = operations.size();
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))})
+                .build());
+
+        // new locations, their days and the deletion in a single transaction and a single
+        // notification, so observers never see half a sync
+        int expired;
+        TodayForecastCache todayCache = TodayForecastCache.getInstance();
+        int generation = todayCache.getGeneration();
+        long startNanos = System.nanoTime();
+        try {
+            ContentProviderResult[] results =
+                    resolver.applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            expired = results[deleteOperation].count;
+        } catch (RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing the forecasts", e);
+            finishTrace(LOCATION_STATUS_UNKNOWN);
             return;
         }
+        mTrace.addTime(SyncTrace.STAGE_COMMIT, startNanos);
+        mTrace.setRows(written, expired);
 
-        //test purposes
-        debugCount = debugCount + ((BuildConfig.DEBUG)? 1:0);
-        int weatherId = (BuildConfig.DEBUG)? new Random().nextInt(5) + 800 : cursor.getInt(INDEX_WEATHER_ID);
-        PutDataMapRequest dataMapRequest = PutDataMapRequest.create("/sunshine_weather");
-        dataMapRequest.getDataMap().putString("maxTemp",Utility.formatTemperature(getContext(),cursor.getDouble(INDEX_MAX_TEMP)+debugCount));
-        dataMapRequest.getDataMap().putString("minTemp",Utility.formatTemperature(getContext(),cursor.getDouble(INDEX_MIN_TEMP)+debugCount));
-        dataMapRequest.getDataMap().putInt("weatherId",weatherId);
-
-
-        PutDataRequest request = dataMapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(googleClient,request).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-            @Override
-            public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                if (dataItemResult.getStatus().isSuccess()){
-                    Log.d("PUTDATA", "SUCCESS - data sent");
-                } else {
-                    Log.d("PUTDATA", "FAILURE - data not sent");
-                }
+        for (LocationForecast forecast : forecasts) {
+            if (forecast.status == LOCATION_STATUS_OK && !forecast.unchanged) {
+                // Only now the responses can be skipped next time
+                mResponseCache.commit(forecast.response, julianStartDay);
+            }
+            // Everybody is about to read today's weather, hand it over without a query
+            ContentValues todayValues = forecast.diff != null
+                    ? forecast.diff.getChangedValues(today) : null;
+            if (todayValues != null) {
+                todayCache.put(forecast.locationSetting, julianStartDay,
+                        TodayForecastCache.TodayForecast.fromValues(todayValues), generation);
             }
-        });
+        }
+
+        // Widgets, Muzei, the notification and the wearables only show the preferred location
+        long[] changedDates = preferredDiff != null ? preferredDiff.changedDates : new long[0];
+        // Yesterday's sync usually stored today already, so on a new day the diff doesn't
+        // include today even though what is shown as today is another row
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean newDay = expired > 0 || prefs.getInt(PREF_LAST_SYNC_DAY, -1) != julianStartDay;
+        boolean everyDayChanged = newDay || locationChanged;
+        if (changedDates.length > 0 || everyDayChanged) {
+            startNanos = System.nanoTime();
+            // Without the list of dates, the widgets redraw every day
+            updateWidgets(context, everyDayChanged ? null : changedDates);
+            mTrace.addTime(SyncTrace.STAGE_WIDGETS, startNanos);
+        }
+        // Muzei only shows today's weather
+        if (everyDayChanged
+                || (preferredDiff != null && preferredDiff.isDateChanged(today))) {
+            startNanos = System.nanoTime();
+            updateMuzei(context);
+            mTrace.addTime(SyncTrace.STAGE_MUZEI, startNanos);
+        }
+        // The wearables keep every day, and move on to the next one by themselves
+        if (changedDates.length > 0 || locationChanged) {
+            startNanos = System.nanoTime();
+            notifyWearables(context, mWearablePublisher, today);
+            mTrace.addTime(SyncTrace.STAGE_WEARABLES, startNanos);
+        }
+
+        int outcome = LOCATION_STATUS_UNKNOWN;
+        if (preferredForecast != null) {
+            // A 304 or an identical forecast has nothing new to tell
+            if (preferredForecast.status == LOCATION_STATUS_OK
+                    && (changedDates.length > 0 || newDay)) {
+                startNanos = System.nanoTime();
+                notifyWeather();
+                mTrace.addTime(SyncTrace.STAGE_NOTIFICATION, startNanos);
+            }
+            if (preferredForecast.status == LOCATION_STATUS_OK) {
+                prefs.edit().putInt(PREF_LAST_SYNC_DAY, julianStartDay).apply();
+            }
+            setLocationStatus(context, preferredForecast.status);
+            outcome = preferredForecast.status;
+            SyncScheduler.onSyncFinished(context, preferredForecast.status,
+                    changedDates.length > 0);
+        }
+        finishTrace(outcome);
+        Log.d(LOG_TAG, "Sync Complete. " + forecasts.size() + " locations, "
+                + written + " days written, " + expired + " expired");
     }
 
-    private void updateWidgets() {
-        Context context = getContext();
+    /**
+     * Notifies any synced wearable that there might be new data
+     * from the forecast that needs to be handled.
+     */
+    static void notifyWearables(Context context, WearablePublisher publisher, long today) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationQuery, today);
+        Cursor cursor = context.getContentResolver().query(weatherUri,
+                WearForecastPayload.PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (cursor.getCount() == 0) {
+                return;
+            }
+            publisher.publish(WearForecastPayload.PATH,
+                    WearForecastPayload.create(cursor, Utility.isMetric(context)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Publishes the forecast to the wearables again, for a change of what the payload carries
+     * besides the days, like the units. Identical payloads are still skipped by the publisher.
+     * Queries the provider, so it must not be called from the main thread.
+     */
+    public static void republishWearables(Context context) {
+        long today = new Time().setJulianDay(getJulianStartDay());
+        notifyWearables(context, WearablePublisher.getInstance(context), today);
+    }
+
+    /**
+     * Tells the widgets the forecast changed.
+     *
+     * @param changedDates the normalized days written, or null when every day may look different
+     */
+    public static void updateWidgets(Context context, long[] changedDates) {
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
-                .setPackage(context.getPackageName());
+                .setPackage(context.getPackageName())
+                .putExtra(EXTRA_CHANGED_DATES, changedDates);
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    /**
+     * Tells whether the day was written by the update announced with the given
+     * {@link #ACTION_DATA_UPDATED} intent. Intents without the list of changed days are
+     * assumed to change every day.
+     *
+     * @param date any time in the day, in milliseconds
+     */
+    public static boolean isDateChanged(Intent intent, long date) {
+        long[] changedDates = intent.getLongArrayExtra(EXTRA_CHANGED_DATES);
+        if (changedDates == null) {
+            return true;
+        }
+        long normalizedDate = WeatherContract.normalizeDate(date);
+        for (long changedDate : changedDates) {
+            if (changedDate == normalizedDate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void updateMuzei(Context context) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
         }
@@ -466,16 +855,15 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
                 String locationQuery = Utility.getPreferredLocation(context);
 
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+                // usually just stored by this same sync, so no need to query it
+                TodayForecastCache.TodayForecast today =
+                        TodayForecastCache.getInstance().get(context, locationQuery);
 
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != null) {
+                    int weatherId = today.weatherId;
+                    double high = today.maxTemp;
+                    double low = today.minTemp;
+                    String desc = today.shortDesc;
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -552,59 +940,43 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to find a location in the weather database.
+     *
+     * @param locationSetting The location string used to request updates from the server.
+     * @return the row ID of the location, or -1 if it isn't stored yet.
+     */
+    long findLocation(String locationSetting) {
+        long startNanos = System.nanoTime();
+        long locationId = LocationRegistry.getInstance().getLocationId(getContext(), locationSetting);
+        if (mTrace != null) {
+            mTrace.addTime(SyncTrace.STAGE_LOCATION, startNanos);
+        }
+        return locationId;
+    }
+
+    /**
+     * Helper method to build the row of a new location, inserted along with its forecast.
      *
      * @param locationSetting The location string used to request updates from the server.
      * @param cityName A human-readable city name, e.g "Mountain View"
      * @param lat the latitude of the city
      * @param lon the longitude of the city
-     * @return the row ID of the added location.
      */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+    static ContentValues createLocationValues(String locationSetting, String cityName,
+                                              double lat, double lon) {
+        // Add the data, along with the corresponding name of the data type,
+        // so the content provider knows what kind of value is being inserted.
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        return locationValues;
     }
 
     /**
@@ -631,10 +1003,25 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        syncImmediately(context, SyncRequestCoordinator.REASON_MANUAL);
+    }
+
+    /**
+     * Same as {@link #syncImmediately(Context)}, unless a sync of the preferred location is
+     * already requested or running.
+     * @param reason SyncRequestCoordinator REASON_ constants, merged
+     */
+    public static void syncImmediately(Context context, int reason) {
+        Account account = getSyncAccount(context);
+        if (account != null && !SyncRequestCoordinator.getInstance().onRequest(account.name,
+                Utility.getPreferredLocation(context), reason, System.currentTimeMillis())) {
+            Log.d(SunshineSyncAdapter.class.getSimpleName(), "Sync already requested");
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
-        ContentResolver.requestSync(getSyncAccount(context),
+        ContentResolver.requestSync(account,
                 context.getString(R.string.content_authority), bundle);
     }
 
@@ -681,7 +1068,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         /*
          * Since we've created an account
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        SyncScheduler.reset(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -691,7 +1078,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         /*
          * Finally, let's do a sync to get things started
          */
-        syncImmediately(context);
+        syncImmediately(context, SyncRequestCoordinator.REASON_ACCOUNT_CREATED);
     }
 
     public static void initializeSyncAdapter(Context context) {
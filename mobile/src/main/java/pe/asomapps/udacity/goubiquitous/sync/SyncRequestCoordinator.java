@@ -0,0 +1,108 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Drops the immediate sync requests that a sync already requested or running will satisfy.
+ *
+ * Requests are told apart by account and location. Requests queued for the same location
+ * before the sync starts are merged, and their reasons are handed to the sync that satisfies
+ * them. Requests for the location being synced don't start another sync right away: they may
+ * come after the forecast was fetched, so they are merged into a single follow-up sync once
+ * the running one finishes.
+ */
+public class SyncRequestCoordinator {
+
+    // Reasons of a request, merged as a bit mask
+    public static final int REASON_MANUAL = 1;
+    public static final int REASON_LOCATION_CHANGED = 1 << 1;
+    public static final int REASON_ACCOUNT_CREATED = 1 << 2;
+
+    // A queued sync that didn't start by then, without network for instance, is requested again
+    static final long PENDING_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static SyncRequestCoordinator sInstance;
+
+    private static class Request {
+        final String account;
+        int reasons;
+        long requestedAt;
+
+        Request(String account, int reasons, long requestedAt) {
+            this.account = account;
+            this.reasons = reasons;
+            this.requestedAt = requestedAt;
+        }
+    }
+
+    // Requested syncs that didn't start yet, by key
+    private final Map<String, Request> mPending = new HashMap<String, Request>();
+    private String mRunningKey;
+    // Reasons of the requests made for the running sync after it started
+    private int mRunningReasons;
+
+    public static synchronized SyncRequestCoordinator getInstance() {
+        if (sInstance == null) {
+            sInstance = new SyncRequestCoordinator();
+        }
+        return sInstance;
+    }
+
+    private static String getKey(String account, String location) {
+        return account + '/' + location;
+    }
+
+    /**
+     * @param reason one of the REASON_ constants
+     * @return true if the sync has to be requested, false if another one will satisfy it
+     */
+    public synchronized boolean onRequest(String account, String location, int reason, long now) {
+        String key = getKey(account, location);
+        if (key.equals(mRunningKey)) {
+            mRunningReasons |= reason;
+            return false;
+        }
+        Request pending = mPending.get(key);
+        if (pending != null && now - pending.requestedAt < PENDING_TIMEOUT_MILLIS) {
+            pending.reasons |= reason;
+            return false;
+        }
+        mPending.put(key, new Request(account, reason | (pending != null ? pending.reasons : 0),
+                now));
+        return true;
+    }
+
+    /**
+     * The sync of an account started. It syncs the current location, so it satisfies every
+     * request queued for the account.
+     *
+     * @return the reasons of the requests it satisfies, 0 for a periodic sync
+     */
+    public synchronized int onSyncStarted(String account, String location) {
+        int reasons = 0;
+        Iterator<Request> pending = mPending.values().iterator();
+        while (pending.hasNext()) {
+            Request request = pending.next();
+            if (request.account.equals(account)) {
+                reasons |= request.reasons;
+                pending.remove();
+            }
+        }
+        mRunningKey = getKey(account, location);
+        mRunningReasons = 0;
+        return reasons;
+    }
+
+    /**
+     * @return the reasons of the requests made while the sync was running, to be synced again
+     * with, or 0 if there were none
+     */
+    public synchronized int onSyncFinished() {
+        int reasons = mRunningReasons;
+        mRunningKey = null;
+        mRunningReasons = 0;
+        return reasons;
+    }
+}
@@ -0,0 +1,145 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+/**
+ * Picks the interval of the periodic sync from the outcome of the last syncs.
+ *
+ * The interval stretches while the forecast comes back unchanged and shrinks when it changes,
+ * staying between a quarter and six times the base interval. A weather alert brings it down to
+ * the shortest one. When the server is down the next syncs back off exponentially, up to twelve
+ * times the base interval, until one of them goes through.
+ *
+ * All intervals are in seconds.
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    private static final String PREF_INTERVAL = "sync_interval";
+    private static final String PREF_FAILURES = "sync_failures";
+
+    private final int mBaseInterval;
+    private int mInterval;
+    // Syncs in a row that found the server down
+    private int mFailures;
+
+    public SyncScheduler(int baseInterval) {
+        this(baseInterval, baseInterval, 0);
+    }
+
+    SyncScheduler(int baseInterval, int interval, int failures) {
+        mBaseInterval = baseInterval;
+        mInterval = interval;
+        mFailures = failures;
+    }
+
+    public int getMinInterval() {
+        return Math.max(1, mBaseInterval / 4);
+    }
+
+    public int getMaxInterval() {
+        return mBaseInterval * 6;
+    }
+
+    public int getMaxBackoffInterval() {
+        return mBaseInterval * 12;
+    }
+
+    public int getInterval() {
+        return mInterval;
+    }
+
+    public int getFlexTime() {
+        return mInterval / 3;
+    }
+
+    /**
+     * @param status the status of the preferred location
+     * @param changed whether its forecast was different from the stored one
+     * @return the interval until the next sync
+     */
+    public int onSyncFinished(@SunshineSyncAdapter.LocationStatus int status, boolean changed) {
+        if (status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN) {
+            // Twice as long after every failure, never sooner than syncs that go through
+            mFailures++;
+            long backoff = 2L * Math.max(mInterval, mBaseInterval);
+            mInterval = (int) Math.min(backoff, getMaxBackoffInterval());
+            return mInterval;
+        }
+        if (mFailures > 0) {
+            // Back from an outage, nothing is known about how often the forecast changes
+            mFailures = 0;
+            mInterval = mBaseInterval;
+        } else if (status == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+            mInterval = changed
+                    ? Math.max(getMinInterval(), mInterval / 2)
+                    : Math.min(getMaxInterval(), mInterval + mInterval / 2);
+        }
+        // Syncing more often won't help with invalid locations or responses
+        return mInterval;
+    }
+
+    /**
+     * A weather alert arrived, the forecast is likely to change soon.
+     *
+     * @return the interval until the next sync
+     */
+    public int onAlert() {
+        mFailures = 0;
+        mInterval = getMinInterval();
+        return mInterval;
+    }
+
+    /**
+     * Updates the periodic sync after a sync, when its interval has to change.
+     */
+    public static void onSyncFinished(Context context,
+                                      @SunshineSyncAdapter.LocationStatus int status,
+                                      boolean changed) {
+        SyncScheduler scheduler = load(context);
+        int previousInterval = scheduler.getInterval();
+        scheduler.onSyncFinished(status, changed);
+        scheduler.save(context, previousInterval);
+    }
+
+    /**
+     * Brings the next sync closer after a weather alert.
+     */
+    public static void onAlert(Context context) {
+        SyncScheduler scheduler = load(context);
+        int previousInterval = scheduler.getInterval();
+        scheduler.onAlert();
+        scheduler.save(context, previousInterval);
+    }
+
+    /**
+     * Starts over from the base interval, forgetting the history of the previous syncs. Called
+     * when the periodic sync is first set up, so the stored interval matches the scheduled one.
+     */
+    public static void reset(Context context) {
+        SyncScheduler scheduler = new SyncScheduler(SunshineSyncAdapter.SYNC_INTERVAL);
+        // Configured whatever was stored before
+        scheduler.save(context, -1);
+    }
+
+    private static SyncScheduler load(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        int baseInterval = SunshineSyncAdapter.SYNC_INTERVAL;
+        return new SyncScheduler(baseInterval, prefs.getInt(PREF_INTERVAL, baseInterval),
+                prefs.getInt(PREF_FAILURES, 0));
+    }
+
+    private void save(Context context, int previousInterval) {
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putInt(PREF_INTERVAL, mInterval)
+                .putInt(PREF_FAILURES, mFailures)
+                .commit();
+        if (mInterval != previousInterval) {
+            Log.d(LOG_TAG, "Next syncs every " + mInterval + "s");
+            SunshineSyncAdapter.configurePeriodicSync(context, mInterval, getFlexTime());
+        }
+    }
+}
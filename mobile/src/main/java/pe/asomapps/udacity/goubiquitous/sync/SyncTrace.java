@@ -0,0 +1,145 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timings and counters of a single sync, kept by {@link SyncTraceLog}.
+ *
+ * The forecasts of several locations are fetched at the same time, so the stages add up the
+ * time spent by every thread and can be longer than the whole sync.
+ */
+public class SyncTrace {
+
+    // Stages of the sync, in the order they run. Parsing includes looking the location up,
+    // which happens as soon as the city is read. The commit writes the new locations and days
+    // and deletes the old days.
+    public static final int STAGE_CONNECT = 0;
+    public static final int STAGE_DOWNLOAD = 1;
+    public static final int STAGE_PARSE = 2;
+    public static final int STAGE_LOCATION = 3;
+    public static final int STAGE_DIFF = 4;
+    public static final int STAGE_COMMIT = 5;
+    public static final int STAGE_WIDGETS = 6;
+    public static final int STAGE_MUZEI = 7;
+    public static final int STAGE_WEARABLES = 8;
+    public static final int STAGE_NOTIFICATION = 9;
+
+    // Indexed by stage, these are the keys of the exported JSON
+    private static final String[] STAGE_NAMES = {
+            "connect", "download", "parse", "location", "diff", "commit",
+            "widgets", "muzei", "wearables", "notification"
+    };
+
+    // Not a LocationStatus, the sync ended before storing anything
+    public static final int OUTCOME_CANCELLED = -1;
+
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final long mStartMillis;
+    private final long mStartNanos;
+    private long mDurationNanos;
+    private final AtomicLongArray mStageNanos = new AtomicLongArray(STAGE_NAMES.length);
+    private final AtomicLong mBytesDownloaded = new AtomicLong();
+    private final AtomicInteger mNotModified = new AtomicInteger();
+    private int mLocations;
+    private int mRowsWritten;
+    private int mRowsExpired;
+    private int mOutcome = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+
+    public SyncTrace() {
+        mStartMillis = System.currentTimeMillis();
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since {@code startNanos}, a {@link System#nanoTime()}, to the stage.
+     */
+    public void addTime(int stage, long startNanos) {
+        mStageNanos.addAndGet(stage, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds time measured elsewhere to the stage, for work spread across another stage.
+     */
+    public void addNanos(int stage, long nanos) {
+        mStageNanos.addAndGet(stage, nanos);
+    }
+
+    public void addResponse(int bytes, boolean notModified) {
+        mBytesDownloaded.addAndGet(bytes);
+        if (notModified) {
+            mNotModified.incrementAndGet();
+        }
+    }
+
+    public void setLocations(int locations) {
+        mLocations = locations;
+    }
+
+    public void setRows(int written, int expired) {
+        mRowsWritten = written;
+        mRowsExpired = expired;
+    }
+
+    /**
+     * Ends the sync with the status of the preferred location, or {@link #OUTCOME_CANCELLED}.
+     */
+    public void finish(int outcome) {
+        mOutcome = outcome;
+        mDurationNanos = System.nanoTime() - mStartNanos;
+    }
+
+    public long getStageNanos(int stage) {
+        return mStageNanos.get(stage);
+    }
+
+    public long getDurationNanos() {
+        return mDurationNanos;
+    }
+
+    public int getOutcome() {
+        return mOutcome;
+    }
+
+    /**
+     * Times are exported in microseconds.
+     */
+    public JSONObject toJson() throws JSONException {
+        JSONObject stages = new JSONObject();
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            stages.put(STAGE_NAMES[stage], mStageNanos.get(stage) / NANOS_PER_MICRO);
+        }
+        return new JSONObject()
+                .put("start", mStartMillis)
+                .put("duration", mDurationNanos / NANOS_PER_MICRO)
+                .put("outcome", getOutcomeName(mOutcome))
+                .put("locations", mLocations)
+                .put("bytes", mBytesDownloaded.get())
+                .put("notModified", mNotModified.get())
+                .put("rowsWritten", mRowsWritten)
+                .put("rowsExpired", mRowsExpired)
+                .put("stages", stages);
+    }
+
+    private static String getOutcomeName(int outcome) {
+        switch (outcome) {
+            case SunshineSyncAdapter.LOCATION_STATUS_OK:
+                return "ok";
+            case SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN:
+                return "server_down";
+            case SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID:
+                return "server_invalid";
+            case SunshineSyncAdapter.LOCATION_STATUS_INVALID:
+                return "invalid";
+            case OUTCOME_CANCELLED:
+                return "cancelled";
+            default:
+                return "unknown";
+        }
+    }
+}
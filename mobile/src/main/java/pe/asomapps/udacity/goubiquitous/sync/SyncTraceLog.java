@@ -0,0 +1,142 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Ring buffer of the last {@link #CAPACITY} sync traces, kept on disk so they survive the
+ * process and can be exported as JSON from a device in the field.
+ */
+public class SyncTraceLog {
+    private static final String LOG_TAG = SyncTraceLog.class.getSimpleName();
+
+    static final int CAPACITY = 20;
+    private static final String FILE_NAME = "sync_traces.json";
+
+    private static SyncTraceLog sInstance;
+
+    private final File mFile;
+    // Oldest first, starting at mFirst
+    private final JSONObject[] mTraces = new JSONObject[CAPACITY];
+    private int mFirst;
+    private int mCount;
+    private boolean mLoaded;
+
+    public static synchronized SyncTraceLog getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncTraceLog(new File(context.getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    SyncTraceLog(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Keeps the trace of a finished sync, dropping the oldest one when full.
+     */
+    public synchronized void add(SyncTrace trace) {
+        load();
+        try {
+            JSONObject json = trace.toJson();
+            if (mCount < CAPACITY) {
+                mTraces[(mFirst + mCount) % CAPACITY] = json;
+                mCount++;
+            } else {
+                mTraces[mFirst] = json;
+                mFirst = (mFirst + 1) % CAPACITY;
+            }
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Error exporting sync trace", e);
+            return;
+        }
+        save();
+    }
+
+    /**
+     * @return the kept traces, oldest first
+     */
+    public synchronized JSONArray toJson() {
+        load();
+        JSONArray traces = new JSONArray();
+        for (int i = 0; i < mCount; i++) {
+            traces.put(mTraces[(mFirst + i) % CAPACITY]);
+        }
+        return traces;
+    }
+
+    public synchronized void clear() {
+        mFirst = 0;
+        mCount = 0;
+        mLoaded = true;
+        mFile.delete();
+    }
+
+    private void load() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        try {
+            JSONArray traces = new JSONArray(readFile());
+            // Keep the newest ones, in case the capacity went down
+            for (int i = Math.max(0, traces.length() - CAPACITY); i < traces.length(); i++) {
+                mTraces[mCount++] = traces.getJSONObject(i);
+            }
+        } catch (IOException | JSONException e) {
+            // Losing the history of a debugging aid is fine
+            Log.w(LOG_TAG, "Ignoring unreadable " + mFile, e);
+            mCount = 0;
+        }
+    }
+
+    private String readFile() throws IOException {
+        InputStream in = new FileInputStream(mFile);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private void save() {
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        try {
+            OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(toJson().toString().getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(mFile)) {
+                Log.w(LOG_TAG, "Unable to write " + mFile);
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error saving sync traces", e);
+            tmpFile.delete();
+        }
+    }
+}
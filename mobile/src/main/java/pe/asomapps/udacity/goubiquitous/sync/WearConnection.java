@@ -0,0 +1,113 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Wearable {@link GoogleApiClient} shared by everything talking to the watch.
+ *
+ * Nothing is connected until something has to be sent, and the client is disconnected once
+ * it has been idle for {@link #IDLE_TIMEOUT_SECONDS}. Without a connected watch there's nobody
+ * to send to, so callers are told to skip their work.
+ *
+ * {@link #acquire()} blocks, it must not be called from the main thread.
+ */
+public class WearConnection {
+    private static final String LOG_TAG = WearConnection.class.getSimpleName();
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long NODES_TIMEOUT_SECONDS = 5;
+    static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    private static WearConnection sInstance;
+
+    private final Context mContext;
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    private GoogleApiClient mGoogleClient;
+    private int mUsers;
+    private ScheduledFuture<?> mDisconnect;
+
+    private final Runnable mDisconnectIfIdle = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (WearConnection.this) {
+                if (mUsers == 0 && mGoogleClient != null) {
+                    Log.d(LOG_TAG, "Disconnecting, idle");
+                    mGoogleClient.disconnect();
+                    mGoogleClient = null;
+                }
+                mDisconnect = null;
+            }
+        }
+    };
+
+    public static synchronized WearConnection getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WearConnection(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WearConnection(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Connects if needed, and checks that a watch is there to receive what is sent. Every
+     * successful call must be followed by a {@link #release()}.
+     *
+     * @return the connected client, or null if it couldn't connect or no watch is connected
+     */
+    public synchronized GoogleApiClient acquire() {
+        if (mDisconnect != null) {
+            mDisconnect.cancel(false);
+            mDisconnect = null;
+        }
+        if (mGoogleClient == null) {
+            mGoogleClient = new GoogleApiClient.Builder(mContext).addApi(Wearable.API).build();
+        }
+        if (!mGoogleClient.isConnected()) {
+            ConnectionResult result =
+                    mGoogleClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (!result.isSuccess()) {
+                Log.d(LOG_TAG, "Unable to connect, " + result);
+                scheduleDisconnect();
+                return null;
+            }
+        }
+
+        NodeApi.GetConnectedNodesResult nodes = Wearable.NodeApi.getConnectedNodes(mGoogleClient)
+                .await(NODES_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!nodes.getStatus().isSuccess() || nodes.getNodes().isEmpty()) {
+            Log.d(LOG_TAG, "No watch connected");
+            scheduleDisconnect();
+            return null;
+        }
+
+        mUsers++;
+        return mGoogleClient;
+    }
+
+    public synchronized void release() {
+        mUsers--;
+        scheduleDisconnect();
+    }
+
+    private void scheduleDisconnect() {
+        if (mUsers == 0 && mDisconnect == null) {
+            mDisconnect = mExecutor.schedule(mDisconnectIfIdle, IDLE_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.database.Cursor;
+import android.text.format.Time;
+
+import com.google.android.gms.wearable.DataMap;
+
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The forecast of the preferred location as published to the wearables, every day packed in a
+ * single byte array so the watch can move on to the next day without the phone.
+ *
+ * Each day takes {@link #DAY_SIZE} bytes, big endian: the julian day as an int, the weather id
+ * as a short, then the max and min temperatures in tenths of a degree Celsius as shorts. The
+ * watch face reads the same layout, keep both in sync.
+ */
+class WearForecastPayload {
+    static final String PATH = "/sunshine_forecast";
+
+    static final String KEY_VERSION = "version";
+    static final String KEY_METRIC = "metric";
+    static final String KEY_DAYS = "days";
+
+    static final int VERSION = 1;
+    static final int DAY_SIZE = 10;
+
+    /**
+     * Columns the cursor given to {@link #pack(Cursor)} must have, in this order.
+     */
+    static final String[] PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    /**
+     * Packs every row of the cursor, read with {@link #PROJECTION}. The cursor is not closed.
+     */
+    static byte[] pack(Cursor cursor) {
+        ByteBuffer buffer = ByteBuffer.allocate(cursor.getCount() * DAY_SIZE);
+        Time time = new Time();
+        if (cursor.moveToFirst()) {
+            do {
+                long date = cursor.getLong(INDEX_DATE);
+                time.set(date);
+                buffer.putInt(Time.getJulianDay(date, time.gmtoff));
+                buffer.putShort((short) cursor.getInt(INDEX_WEATHER_ID));
+                buffer.putShort(toTenths(cursor.getDouble(INDEX_MAX_TEMP)));
+                buffer.putShort(toTenths(cursor.getDouble(INDEX_MIN_TEMP)));
+            } while (cursor.moveToNext());
+        }
+        return buffer.array();
+    }
+
+    static DataMap create(Cursor cursor, boolean metric) {
+        DataMap dataMap = new DataMap();
+        dataMap.putInt(KEY_VERSION, VERSION);
+        dataMap.putBoolean(KEY_METRIC, metric);
+        dataMap.putByteArray(KEY_DAYS, pack(cursor));
+        return dataMap;
+    }
+
+    private static short toTenths(double temperature) {
+        return (short) Math.round(temperature * 10);
+    }
+}
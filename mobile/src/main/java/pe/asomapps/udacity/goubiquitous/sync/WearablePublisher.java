@@ -0,0 +1,210 @@
+package pe.asomapps.udacity.goubiquitous.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes data items to the wearables, skipping payloads identical to the last one published
+ * on the same path and coalescing bursts of publications into a single push.
+ *
+ * Every push wakes up the Bluetooth link and the watch, so the hash of the last payload is kept
+ * in the preferences and survives the process. Pushes and their bytes are counted per day.
+ */
+class WearablePublisher {
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    private static final String PREF_PAYLOAD_HASH_PREFIX = "wear_payload_hash:";
+    private static final String PREF_STATS_DAY = "wear_stats_day";
+    private static final String PREF_STATS_PUSHES = "wear_stats_pushes";
+    private static final String PREF_STATS_BYTES = "wear_stats_bytes";
+    private static final String PREF_STATS_SUPPRESSED = "wear_stats_suppressed";
+
+    // Back to back syncs and deltas within this time reach the wearables as a single push
+    private static final long PUBLISH_WINDOW_MILLIS = 5 * 1000;
+
+    private static WearablePublisher sInstance;
+
+    private final Context mContext;
+    private final WearConnection mConnection;
+    private final long mWindowMillis;
+    private final ScheduledExecutorService mExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+    // Latest payload of each path waiting for the window to close
+    private final Map<String, DataMap> mPending = new HashMap<String, DataMap>();
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Returns the publisher shared by everything in the process that talks to the wearables,
+     * so their publications are coalesced together.
+     */
+    static synchronized WearablePublisher getInstance(Context context) {
+        if (sInstance == null) {
+            // Connects to the wearables only when there's something to send them
+            sInstance = new WearablePublisher(context, WearConnection.getInstance(context),
+                    PUBLISH_WINDOW_MILLIS);
+        }
+        return sInstance;
+    }
+
+    /**
+     * @param windowMillis how long to wait for more publications before pushing, 0 pushes
+     *                     right away on the calling thread
+     */
+    WearablePublisher(Context context, WearConnection connection, long windowMillis) {
+        mContext = context.getApplicationContext();
+        mConnection = connection;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Queues the payload for the path, replacing any payload for it still waiting. Pushing
+     * blocks, so without a window this must not be called from the main thread.
+     */
+    void publish(String path, DataMap dataMap) {
+        if (mWindowMillis <= 0) {
+            push(path, dataMap);
+            return;
+        }
+        synchronized (mPending) {
+            // The first publication of a burst opens the window, the others just replace it
+            if (mPending.isEmpty()) {
+                mExecutor.schedule(mFlush, mWindowMillis, TimeUnit.MILLISECONDS);
+            }
+            mPending.put(path, dataMap);
+        }
+    }
+
+    private void flush() {
+        Map<String, DataMap> pending;
+        synchronized (mPending) {
+            pending = new HashMap<String, DataMap>(mPending);
+            mPending.clear();
+        }
+        for (Map.Entry<String, DataMap> entry : pending.entrySet()) {
+            push(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void push(String path, DataMap dataMap) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String hashKey = PREF_PAYLOAD_HASH_PREFIX + path;
+        int hash = Arrays.hashCode(dataMap.toByteArray());
+        if (prefs.contains(hashKey) && prefs.getInt(hashKey, 0) == hash) {
+            recordStats(prefs, 0, 0, 1);
+            Log.d(LOG_TAG, "Skipped " + path + ", the wearables already have it");
+            return;
+        }
+
+        // Without a watch the payload isn't remembered, so it is pushed once one is back
+        GoogleApiClient googleClient = mConnection.acquire();
+        if (googleClient == null) {
+            Log.d(LOG_TAG, "Skipped " + path + ", no wearables");
+            return;
+        }
+        try {
+            putDataItem(googleClient, prefs, hashKey, hash, path, dataMap);
+        } finally {
+            mConnection.release();
+        }
+    }
+
+    private void putDataItem(GoogleApiClient googleClient, SharedPreferences prefs,
+                             final String hashKey, int hash, String path, DataMap dataMap) {
+        PutDataMapRequest dataMapRequest = PutDataMapRequest.create(path);
+        dataMapRequest.getDataMap().putAll(dataMap);
+        PutDataRequest request = dataMapRequest.asPutDataRequest();
+        prefs.edit().putInt(hashKey, hash).apply();
+        recordStats(prefs, 1, request.getData().length, 0);
+
+        Wearable.DataApi.putDataItem(googleClient, request).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+            @Override
+            public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
+                if (dataItemResult.getStatus().isSuccess()) {
+                    Log.d(LOG_TAG, "SUCCESS - data sent");
+                } else {
+                    Log.d(LOG_TAG, "FAILURE - data not sent");
+                    // So the same payload is tried again next time
+                    PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                            .remove(hashKey).apply();
+                }
+            }
+        });
+    }
+
+    private synchronized void recordStats(SharedPreferences prefs, int pushes, int bytes,
+                                          int suppressed) {
+        int today = getCurrentJulianDay();
+        boolean sameDay = prefs.getInt(PREF_STATS_DAY, -1) == today;
+        int dayPushes = (sameDay ? prefs.getInt(PREF_STATS_PUSHES, 0) : 0) + pushes;
+        int dayBytes = (sameDay ? prefs.getInt(PREF_STATS_BYTES, 0) : 0) + bytes;
+        int daySuppressed = (sameDay ? prefs.getInt(PREF_STATS_SUPPRESSED, 0) : 0) + suppressed;
+        prefs.edit()
+                .putInt(PREF_STATS_DAY, today)
+                .putInt(PREF_STATS_PUSHES, dayPushes)
+                .putInt(PREF_STATS_BYTES, dayBytes)
+                .putInt(PREF_STATS_SUPPRESSED, daySuppressed)
+                .apply();
+        Log.d(LOG_TAG, "Today: " + dayPushes + " pushes, " + dayBytes + " bytes, "
+                + daySuppressed + " skipped");
+    }
+
+    /**
+     * @return the number of pushes made today
+     */
+    int getPushCount() {
+        return getTodayStat(PREF_STATS_PUSHES);
+    }
+
+    /**
+     * @return the bytes of the payloads pushed today
+     */
+    int getPushBytes() {
+        return getTodayStat(PREF_STATS_BYTES);
+    }
+
+    /**
+     * @return the number of pushes skipped today because the payload didn't change
+     */
+    int getSuppressedCount() {
+        return getTodayStat(PREF_STATS_SUPPRESSED);
+    }
+
+    private int getTodayStat(String key) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        if (prefs.getInt(PREF_STATS_DAY, -1) != getCurrentJulianDay()) {
+            return 0;
+        }
+        return prefs.getInt(key, 0);
+    }
+
+    private static int getCurrentJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
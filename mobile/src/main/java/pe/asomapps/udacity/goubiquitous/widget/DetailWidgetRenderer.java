@@ -0,0 +1,222 @@
+package pe.asomapps.udacity.goubiquitous.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import com.bumptech.glide.Glide;
+
+import pe.asomapps.udacity.goubiquitous.R;
+import pe.asomapps.udacity.goubiquitous.Utility;
+import pe.asomapps.udacity.goubiquitous.data.WeatherContract;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Builds every list item of the detail widget when its data changes.
+ *
+ * The launcher asks for the items on a binder thread while it scrolls, so the views, along with
+ * the remote art already scaled to the icon size, are all built up front and handing them over
+ * is a lookup. Items whose content didn't change are kept from one data change to the next, and
+ * the art of each condition is only downloaded once.
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class DetailWidgetRenderer {
+    private static final String LOG_TAG = DetailWidgetRenderer.class.getSimpleName();
+
+    static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    static final int INDEX_WEATHER_ID = 0;
+    static final int INDEX_WEATHER_DATE = 1;
+    static final int INDEX_WEATHER_CONDITION_ID = 2;
+    static final int INDEX_WEATHER_DESC = 3;
+    static final int INDEX_WEATHER_MAX_TEMP = 4;
+    static final int INDEX_WEATHER_MIN_TEMP = 5;
+
+    private final Context mContext;
+    private final int mIconSize;
+
+    private long[] mItemIds = new long[0];
+    private RemoteViews[] mViews = new RemoteViews[0];
+    // Items of the last render, by everything they show
+    private Map<String, RemoteViews> mViewsByContent = new HashMap<String, RemoteViews>();
+    // Remote art of the last render scaled to the icon size, by URL
+    private Map<String, Bitmap> mArt = new HashMap<String, Bitmap>();
+    private int mBuiltCount;
+    private int mReusedCount;
+
+    DetailWidgetRenderer(Context context) {
+        mContext = context;
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    /**
+     * Builds the items for the rows of the cursor, read with {@link #FORECAST_COLUMNS}. It is
+     * not closed.
+     */
+    synchronized void render(Cursor data, String locationSetting) {
+        int count = data == null ? 0 : data.getCount();
+        long[] itemIds = new long[count];
+        RemoteViews[] views = new RemoteViews[count];
+        Map<String, RemoteViews> viewsByContent = new HashMap<String, RemoteViews>(count * 2);
+        Map<String, Bitmap> art = new HashMap<String, Bitmap>();
+        // Art that failed to download in this render, not tried again until the next one
+        Set<String> missingArt = new HashSet<String>();
+        boolean localGraphics = Utility.usingLocalGraphics(mContext);
+
+        for (int position = 0; position < count && data.moveToPosition(position); position++) {
+            itemIds[position] = data.getLong(INDEX_WEATHER_ID);
+            int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+            String description = data.getString(INDEX_WEATHER_DESC);
+            long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+            String formattedDate = Utility.getFriendlyDayString(mContext, dateInMillis, false);
+            String formattedMaxTemperature = Utility.formatTemperature(mContext,
+                    data.getDouble(INDEX_WEATHER_MAX_TEMP));
+            String formattedMinTemperature = Utility.formatTemperature(mContext,
+                    data.getDouble(INDEX_WEATHER_MIN_TEMP));
+            String artUrl = localGraphics
+                    ? null : Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+
+            String content = locationSetting + '|' + dateInMillis + '|' + formattedDate + '|'
+                    + weatherId + '|' + description + '|' + formattedMaxTemperature + '|'
+                    + formattedMinTemperature + '|' + artUrl;
+            RemoteViews itemViews = mViewsByContent.get(content);
+            if (itemViews == null) {
+                itemViews = viewsByContent.get(content);
+            }
+            boolean complete = true;
+            if (itemViews != null) {
+                mReusedCount++;
+            } else {
+                itemViews = new RemoteViews(mContext.getPackageName(),
+                        R.layout.widget_detail_list_item);
+                Bitmap weatherArtImage = artUrl != null ? getArt(artUrl, art, missingArt) : null;
+                if (weatherArtImage != null) {
+                    itemViews.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                } else {
+                    complete = artUrl == null;
+                    itemViews.setImageViewResource(R.id.widget_icon,
+                            Utility.getIconResourceForWeatherCondition(weatherId));
+                }
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                    setRemoteContentDescription(itemViews, description);
+                }
+                itemViews.setTextViewText(R.id.widget_date, formattedDate);
+                itemViews.setTextViewText(R.id.widget_description, description);
+                itemViews.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+                itemViews.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+                final Intent fillInIntent = new Intent();
+                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        locationSetting,
+                        dateInMillis);
+                fillInIntent.setData(weatherUri);
+                itemViews.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+                mBuiltCount++;
+            }
+            // An item falling back on the local icon is built again by the next render, which
+            // tries the download again
+            if (complete) {
+                viewsByContent.put(content, itemViews);
+            }
+            views[position] = itemViews;
+        }
+
+        // Only what is shown now is kept, a changed art pack drops the old art
+        mItemIds = itemIds;
+        mViews = views;
+        mViewsByContent = viewsByContent;
+        mArt = art;
+    }
+
+    /**
+     * Returns the art from the last render, or downloads it scaled to the icon size.
+     *
+     * @param art the art of the current render, the bitmap is added to it
+     * @param missingArt the art that failed to download in the current render
+     * @return the art, or null if it couldn't be downloaded
+     */
+    private Bitmap getArt(String artUrl, Map<String, Bitmap> art, Set<String> missingArt) {
+        if (missingArt.contains(artUrl)) {
+            return null;
+        }
+        Bitmap bitmap = art.get(artUrl);
+        if (bitmap == null) {
+            bitmap = mArt.get(artUrl);
+        }
+        if (bitmap == null) {
+            try {
+                bitmap = Glide.with(mContext)
+                        .load(artUrl)
+                        .asBitmap()
+                        .fitCenter()
+                        .into(mIconSize, mIconSize).get();
+            } catch (InterruptedException | ExecutionException e) {
+                // Not remembered, the next render tries again
+                Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+                missingArt.add(artUrl);
+                return null;
+            }
+        }
+        art.put(artUrl, bitmap);
+        return bitmap;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    synchronized int getCount() {
+        return mViews.length;
+    }
+
+    /**
+     * @return the item built by the last render, or null if there is no such position
+     */
+    synchronized RemoteViews getViewAt(int position) {
+        return position >= 0 && position < mViews.length ? mViews[position] : null;
+    }
+
+    synchronized long getItemId(int position) {
+        return position >= 0 && position < mItemIds.length ? mItemIds[position] : position;
+    }
+
+    synchronized void clear() {
+        mItemIds = new long[0];
+        mViews = new RemoteViews[0];
+        mViewsByContent.clear();
+        mArt.clear();
+    }
+
+    /**
+     * @return how many items have been built since the renderer was created
+     */
+    synchronized int getBuiltCount() {
+        return mBuiltCount;
+    }
+
+    /**
+     * @return how many items have been reused since the renderer was created
+     */
+    synchronized int getReusedCount() {
+        return mReusedCount;
+    }
+}
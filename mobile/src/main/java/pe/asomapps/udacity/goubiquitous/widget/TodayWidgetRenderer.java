@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous.widget;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.text.format.Time;
+import android.util.SparseArray;
+import android.widget.RemoteViews;
+
+import pe.asomapps.udacity.goubiquitous.MainActivity;
+import pe.asomapps.udacity.goubiquitous.R;
+import pe.asomapps.udacity.goubiquitous.Utility;
+import pe.asomapps.udacity.goubiquitous.data.TodayForecastCache;
+
+/**
+ * Keeps the data shown by the Today widgets and the views already rendered for each layout.
+ *
+ * The widgets are updated on every resize, every update and every data change. Only the latter
+ * needs to read today's forecast again; a resize just picks the views of its size, rendering
+ * them the first time that size is used. After a data change only the sizes in use are
+ * rendered again, as the widgets ask for them.
+ */
+public class TodayWidgetRenderer {
+
+    private static final TodayWidgetRenderer sInstance = new TodayWidgetRenderer();
+
+    // What the snapshot was read for, it is read again when any of them changes
+    private boolean mLoaded;
+    private String mLocationSetting;
+    private int mJulianDay;
+    private boolean mMetric;
+    // null when there is no forecast for today
+    private TodayForecastCache.TodayForecast mForecast;
+
+    // Rendered views, by layout
+    private final SparseArray<RemoteViews> mViews = new SparseArray<RemoteViews>();
+    private final Time mTime = new Time();
+    private int mLoadCount;
+    private int mRenderCount;
+
+    public static TodayWidgetRenderer getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Returns the views of the widget for the layout, rendering them if the layout hasn't been
+     * used since the data changed.
+     *
+     * @return the views, or null if there is no forecast for today
+     */
+    public synchronized RemoteViews getViews(Context context, int layoutId) {
+        validate(context);
+        if (mForecast == null) {
+            return null;
+        }
+        RemoteViews views = mViews.get(layoutId);
+        if (views == null) {
+            views = render(context, layoutId);
+            mViews.put(layoutId, views);
+            mRenderCount++;
+        }
+        return views;
+    }
+
+    /**
+     * Drops the snapshot and every rendered view. Called when the forecast changes.
+     */
+    public synchronized void invalidate() {
+        mLoaded = false;
+        mForecast = null;
+        mViews.clear();
+    }
+
+    /**
+     * @return how many times today's forecast has been read
+     */
+    public synchronized int getLoadCount() {
+        return mLoadCount;
+    }
+
+    /**
+     * @return how many times views have been rendered
+     */
+    public synchronized int getRenderCount() {
+        return mRenderCount;
+    }
+
+    private void validate(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        boolean metric = Utility.isMetric(context);
+        mTime.setToNow();
+        int julianDay = Time.getJulianDay(System.currentTimeMillis(), mTime.gmtoff);
+        if (mLoaded && julianDay == mJulianDay && metric == mMetric
+                && locationSetting.equals(mLocationSetting)) {
+            return;
+        }
+
+        invalidate();
+        // The sync that changed the data usually left it cached
+        mForecast = TodayForecastCache.getInstance().get(context, locationSetting);
+        mLocationSetting = locationSetting;
+        mJulianDay = julianDay;
+        mMetric = metric;
+        mLoaded = true;
+        mLoadCount++;
+    }
+
+    private RemoteViews render(Context context, int layoutId) {
+        // Extract the weather data
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(mForecast.weatherId);
+        String description = mForecast.shortDesc;
+        String formattedMaxTemperature = Utility.formatTemperature(context, mForecast.maxTemp);
+        String formattedMinTemperature = Utility.formatTemperature(context, mForecast.minTemp);
+
+        RemoteViews views = new RemoteViews(context.getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(context, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
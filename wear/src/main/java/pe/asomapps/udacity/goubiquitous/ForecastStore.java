@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.wearable.DataMap;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Keeps the last forecast received from the phone on the watch, so the watch face can show the
+ * next day's weather after midnight without reaching the phone.
+ *
+ * The phone packs every day in {@link #DAY_SIZE} bytes, big endian: the julian day as an int,
+ * the weather id as a short, then the max and min temperatures in tenths of a degree Celsius as
+ * shorts. See WearForecastPayload in the mobile module.
+ */
+class ForecastStore {
+    private static final String LOG_TAG = ForecastStore.class.getSimpleName();
+
+    static final String PATH = "/sunshine_forecast";
+
+    private static final String KEY_VERSION = "version";
+    private static final String KEY_METRIC = "metric";
+    private static final String KEY_DAYS = "days";
+
+    private static final int VERSION = 1;
+    private static final int DAY_SIZE = 10;
+    private static final String FILE_NAME = "forecast";
+
+    /**
+     * The weather of one day.
+     */
+    static class Day {
+        final int weatherId;
+        final double maxTemp;
+        final double minTemp;
+
+        Day(int weatherId, double maxTemp, double minTemp) {
+            this.weatherId = weatherId;
+            this.maxTemp = maxTemp;
+            this.minTemp = minTemp;
+        }
+    }
+
+    private final File mFile;
+    private boolean mMetric = true;
+    private ByteBuffer mDays = ByteBuffer.allocate(0);
+
+    ForecastStore(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    /**
+     * Replaces the forecast with the one received from the phone and saves it.
+     */
+    void update(DataMap dataMap) {
+        byte[] days = dataMap.getByteArray(KEY_DAYS);
+        if (dataMap.getInt(KEY_VERSION) != VERSION || days == null) {
+            Log.w(LOG_TAG, "Ignoring forecast version " + dataMap.getInt(KEY_VERSION));
+            return;
+        }
+        mMetric = dataMap.getBoolean(KEY_METRIC, true);
+        mDays = ByteBuffer.wrap(days);
+        save(days);
+    }
+
+    boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the weather of the day, or null if the phone didn't send it
+     */
+    Day getDay(int julianDay) {
+        for (int offset = 0; offset + DAY_SIZE <= mDays.limit(); offset += DAY_SIZE) {
+            if (mDays.getInt(offset) == julianDay) {
+                return new Day(mDays.getShort(offset + 4),
+                        mDays.getShort(offset + 6) / 10d,
+                        mDays.getShort(offset + 8) / 10d);
+            }
+        }
+        return null;
+    }
+
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(mFile));
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            boolean metric = in.readBoolean();
+            byte[] days = new byte[in.readInt()];
+            in.readFully(days);
+            mMetric = metric;
+            mDays = ByteBuffer.wrap(days);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading the stored forecast", e);
+        } finally {
+            close(in);
+        }
+    }
+
+    private void save(byte[] days) {
+        // Written aside and renamed, so a crash never leaves half a forecast behind
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmpFile));
+            out.writeInt(VERSION);
+            out.writeBoolean(mMetric);
+            out.writeInt(days.length);
+            out.write(days);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(mFile)) {
+                Log.e(LOG_TAG, "Error saving the forecast");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error saving the forecast", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+}
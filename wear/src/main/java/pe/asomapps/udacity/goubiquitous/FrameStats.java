@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.os.Debug;
+import android.util.Log;
+
+/**
+ * Frame time and allocation counter for the watch face. Only used in debug builds, it logs a
+ * summary every {@link #REPORT_EVERY_FRAMES} frames.
+ */
+class FrameStats {
+    private static final String LOG_TAG = FrameStats.class.getSimpleName();
+
+    private static final int REPORT_EVERY_FRAMES = 60;
+
+    private long mFrameStartNanos;
+    private int mFrameStartAllocations;
+
+    private int mFrames;
+    private long mTotalNanos;
+    private long mMaxNanos;
+    private int mAllocations;
+
+    @SuppressWarnings("deprecation")
+    void start() {
+        // Counts the allocations of the drawing thread only
+        Debug.startAllocCounting();
+    }
+
+    @SuppressWarnings("deprecation")
+    void stop() {
+        Debug.stopAllocCounting();
+    }
+
+    @SuppressWarnings("deprecation")
+    void beginFrame() {
+        mFrameStartAllocations = Debug.getThreadAllocCount();
+        mFrameStartNanos = System.nanoTime();
+    }
+
+    @SuppressWarnings("deprecation")
+    void endFrame() {
+        long frameNanos = System.nanoTime() - mFrameStartNanos;
+        mAllocations += Debug.getThreadAllocCount() - mFrameStartAllocations;
+        mTotalNanos += frameNanos;
+        if (frameNanos > mMaxNanos) {
+            mMaxNanos = frameNanos;
+        }
+
+        if (++mFrames == REPORT_EVERY_FRAMES) {
+            Log.d(LOG_TAG, mFrames + " frames, average " + mTotalNanos / mFrames / 1000
+                    + "us, max " + mMaxNanos / 1000 + "us, " + mAllocations + " allocations");
+            mFrames = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+            mAllocations = 0;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package pe.asomapps.udacity.goubiquitous;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded LRU cache of the weather icons shown by the watch face, in color and in gray, at the
+ * size they are drawn. Icons are decoded on a background thread and evicted bitmaps are recycled,
+ * so going back to a condition seen recently doesn't decode anything.
+ */
+class WeatherIconCache {
+
+    /**
+     * Receives the icons on the main thread.
+     */
+    interface Callback {
+        void onIconsLoaded(int resId, Bitmap icon, Bitmap grayIcon);
+    }
+
+    // Enough for a dozen icons at the usual size, in both variants
+    private static final int MAX_SIZE_KB = 1024;
+
+    private final Resources mResources;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    private final LruCache<String, Bitmap> mIcons = new LruCache<String, Bitmap>(MAX_SIZE_KB) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getByteCount() / 1024;
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+            if (evicted) {
+                oldValue.recycle();
+            }
+        }
+    };
+
+    WeatherIconCache(Resources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Loads both variants of the icon. The callback runs right away when they are cached,
+     * otherwise once they have been decoded.
+     */
+    void load(final int resId, final int size, final Callback callback) {
+        Bitmap icon = mIcons.get(getKey(resId, size, false));
+        Bitmap grayIcon = mIcons.get(getKey(resId, size, true));
+        if (icon != null && grayIcon != null) {
+            callback.onIconsLoaded(resId, icon, grayIcon);
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap icon = getOrDecode(resId, size);
+                final Bitmap grayIcon = getOrCreateGray(resId, size, icon);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onIconsLoaded(resId, icon, grayIcon);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stops the decoding thread and recycles every icon.
+     */
+    void release() {
+        mExecutor.shutdownNow();
+        mIcons.evictAll();
+    }
+
+    private static String getKey(int resId, int size, boolean gray) {
+        return resId + "/" + size + (gray ? "/gray" : "/color");
+    }
+
+    private Bitmap getOrDecode(int resId, int size) {
+        String key = getKey(resId, size, false);
+        Bitmap icon = mIcons.get(key);
+        if (icon == null) {
+            icon = decode(resId, size);
+            mIcons.put(key, icon);
+        }
+        return icon;
+    }
+
+    private Bitmap getOrCreateGray(int resId, int size, Bitmap icon) {
+        String key = getKey(resId, size, true);
+        Bitmap grayIcon = mIcons.get(key);
+        if (grayIcon == null) {
+            grayIcon = Bitmap.createBitmap(icon.getWidth(), icon.getHeight(),
+                    Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(grayIcon);
+            Paint grayPaint = new Paint();
+            ColorMatrix colorMatrix = new ColorMatrix();
+            colorMatrix.setSaturation(0);
+            grayPaint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));
+            canvas.drawBitmap(icon, 0, 0, grayPaint);
+            mIcons.put(key, grayIcon);
+        }
+        return grayIcon;
+    }
+
+    /**
+     * Decodes the resource subsampled as close as possible to the size, then scales the rest of
+     * the way, recycling the intermediate bitmap.
+     */
+    private Bitmap decode(int resId, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= size
+                && options.outHeight / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        Bitmap decoded = BitmapFactory.decodeResource(mResources, resId, options);
+
+        if (decoded.getWidth() == size && decoded.getHeight() == size) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+}
@@ -23,11 +23,8 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
@@ -103,13 +100,35 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
 
     private class Engine extends CanvasWatchFaceService.Engine implements GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener,
-            DataApi.DataListener {
+            DataApi.DataListener,
+            WeatherIconCache.Callback {
         final Handler mUpdateTimeHandler = new EngineHandler(this);
         boolean mRegisteredTimeZoneReceiver = false;
         boolean isRound, mAmbient;
         Time mTime;
         private String[] mDayNames, mMonthNames;
 
+        // "HH:MM" and ":SS", rewritten in place every frame
+        private final char[] mTimeChars = {'0', '0', ':', '0', '0'};
+        private final char[] mSecondsChars = {':', '0', '0'};
+        // Minute of the day mTimeWidth was measured for
+        private int mTimeMinute = -1;
+        private float mTimeWidth;
+
+        // Only rebuilt when the day changes
+        private String mDateText;
+        private int mDateYear = -1, mDateYearDay = -1;
+        private float mDateWidth;
+
+        private float mMaxTempWidth;
+
+        // Everything but the time, rasterized once per mode until the day, the weather or the
+        // low-bit setting changes
+        private Bitmap mInteractiveLayer, mAmbientLayer;
+        private boolean mInteractiveLayerValid, mAmbientLayerValid;
+        private final Rect mLayerBounds = new Rect();
+        private final FrameStats mFrameStats = BuildConfig.DEBUG ? new FrameStats() : null;
+
         private float mTimeYOffset = -1, mDateYOffset, mSeparatorYOffset, mWeatherYOffset;
         private float defaultOffset;
 
@@ -120,12 +139,18 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
         private String lastMinTemp;
         private Bitmap mWeatherIconBitmap;
         private Bitmap mWeatherIconGrayBitmap;
+        private WeatherIconCache mIconCache;
+        private ForecastStore mForecastStore;
+        // Icon asked for last, earlier loads finishing after it are ignored
+        private int mWeatherIconResId = -1;
 
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mTime.clear(intent.getStringExtra("time-zone"));
                 mTime.setToNow();
+                mTimeMinute = -1;
+                mDateYearDay = -1;
             }
         };
 
@@ -147,16 +172,34 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
                     .build());
 
             mTime = new Time();
+            mIconCache = new WeatherIconCache(getResources());
+            mForecastStore = new ForecastStore(WeatherWatchFace.this);
 
-            //Get day and month names
+            //Get day and month names, upper cased once here rather than on every frame
             DateFormatSymbols symbols = new DateFormatSymbols();
-            mDayNames = symbols.getShortWeekdays();
-            mMonthNames = symbols.getShortMonths();
+            mDayNames = toUpperCase(symbols.getShortWeekdays());
+            mMonthNames = toUpperCase(symbols.getShortMonths());
+
+            if (mFrameStats != null) {
+                mFrameStats.start();
+            }
+        }
+
+        private String[] toUpperCase(String[] names) {
+            String[] upperCased = new String[names.length];
+            for (int i = 0; i < names.length; i++) {
+                upperCased[i] = names[i].toUpperCase();
+            }
+            return upperCased;
         }
 
         @Override
         public void onDestroy() {
+            if (mFrameStats != null) {
+                mFrameStats.stop();
+            }
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mIconCache.release();
             super.onDestroy();
         }
 
@@ -169,7 +212,11 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            boolean lowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            if (lowBitAmbient != mLowBitAmbient) {
+                mLowBitAmbient = lowBitAmbient;
+                invalidateLayers();
+            }
         }
 
         @Override
@@ -196,14 +243,18 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
+            if (mFrameStats != null) {
+                mFrameStats.beginFrame();
+            }
             mTime.setToNow();
             initValues();
-            paintBackground(canvas, bounds);
-            paintDateTime(canvas, bounds);
-            paintWeather(canvas, bounds);
-
-            paintExtras(canvas, bounds);
+            updateDate();
+            canvas.drawBitmap(getStaticLayer(bounds), bounds.left, bounds.top, null);
+            paintTime(canvas, bounds);
 
+            if (mFrameStats != null) {
+                mFrameStats.endFrame();
+            }
         }
 
         /**
@@ -245,6 +296,9 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
             mMaxPaint = createTextPaint(whiteColor, textSizeWeather);
             mMinPaint = createTextPaint(grayColor, textSizeWeather);
             mWeatherYOffset = defaultOffset + mSeparatorYOffset + textSizeWeather;
+
+            // Weather may have arrived before the paints existed
+            updateMaxTempWidth();
         }
 
         private Paint createTextPaint(int textColor, float textSize) {
@@ -256,6 +310,60 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
             return paint;
         }
 
+        /**
+         * Measure the max temperature once per update instead of on every frame
+         */
+        private void updateMaxTempWidth() {
+            mMaxTempWidth = lastMaxTemp != null && mTimePaint != null
+                    ? mTimePaint.measureText(lastMaxTemp) : 0;
+        }
+
+        private void invalidateLayers() {
+            mInteractiveLayerValid = false;
+            mAmbientLayerValid = false;
+        }
+
+        /**
+         * Returns the layer with everything but the time for the current mode, drawing it first
+         * if it was invalidated or the surface changed size
+         */
+        private Bitmap getStaticLayer(Rect bounds) {
+            boolean ambient = isInAmbientMode();
+            Bitmap layer = ambient ? mAmbientLayer : mInteractiveLayer;
+            boolean valid = ambient ? mAmbientLayerValid : mInteractiveLayerValid;
+            if (layer == null || layer.getWidth() != bounds.width()
+                    || layer.getHeight() != bounds.height()) {
+                if (layer != null) {
+                    layer.recycle();
+                }
+                layer = Bitmap.createBitmap(bounds.width(), bounds.height(), Bitmap.Config.ARGB_8888);
+                valid = false;
+            }
+
+            if (!valid) {
+                boolean antiAlias = !(ambient && mLowBitAmbient);
+                mDatePaint.setAntiAlias(antiAlias);
+                mMaxPaint.setAntiAlias(antiAlias);
+                mMinPaint.setAntiAlias(antiAlias);
+
+                Canvas layerCanvas = new Canvas(layer);
+                mLayerBounds.set(0, 0, bounds.width(), bounds.height());
+                paintBackground(layerCanvas, mLayerBounds);
+                paintDate(layerCanvas, mLayerBounds);
+                paintWeather(layerCanvas, mLayerBounds);
+                paintExtras(layerCanvas, mLayerBounds);
+            }
+
+            if (ambient) {
+                mAmbientLayer = layer;
+                mAmbientLayerValid = true;
+            } else {
+                mInteractiveLayer = layer;
+                mInteractiveLayerValid = true;
+            }
+            return layer;
+        }
+
         /**
          * Draw background from the watch face.
          * This can be updated to draw an image or animation if needed later on
@@ -279,24 +387,90 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Draw the information from the date and time into the watch face
+         * Draw the time into the watch face, the only part that changes every tick
          */
-        private void paintDateTime(Canvas canvas, Rect bounds) {
+        private void paintTime(Canvas canvas, Rect bounds) {
             float centerX = bounds.centerX();
 
-            String timeGeneral = String.format("%02d:%02d", mTime.hour, mTime.minute);
+            int minuteOfDay = mTime.hour * 60 + mTime.minute;
+            if (minuteOfDay != mTimeMinute) {
+                putTwoDigits(mTimeChars, 0, mTime.hour);
+                putTwoDigits(mTimeChars, 3, mTime.minute);
+                mTimeWidth = mTimePaint.measureText(mTimeChars, 0, mTimeChars.length);
+                mTimeMinute = minuteOfDay;
+            }
 
-            float timeXOffset = mTimePaint.measureText(timeGeneral) / 2;
-            canvas.drawText(timeGeneral, centerX - timeXOffset, mTimeYOffset, mTimePaint);
+            float timeXOffset = mTimeWidth / 2;
+            canvas.drawText(mTimeChars, 0, mTimeChars.length, centerX - timeXOffset, mTimeYOffset, mTimePaint);
 
             if (!isInAmbientMode()) {
-                String timeSeconds = String.format(":%02d", mTime.second);
-                canvas.drawText(timeSeconds, centerX + timeXOffset, mTimeYOffset, mSecondsPaint);
+                putTwoDigits(mSecondsChars, 1, mTime.second);
+                canvas.drawText(mSecondsChars, 0, mSecondsChars.length, centerX + timeXOffset, mTimeYOffset, mSecondsPaint);
             }
 
-            String date = String.format("%s, %s %02d %04d", mDayNames[mTime.weekDay+1].toUpperCase(), mMonthNames[mTime.month].toUpperCase(), mTime.monthDay, mTime.year);
-            float dateXOffset = mDatePaint.measureText(date) / 2;
-            canvas.drawText(date, centerX - dateXOffset, mDateYOffset, mDatePaint);
+        }
+
+        /**
+         * Rebuild the date line when the day changed
+         */
+        private void updateDate() {
+            if (mTime.yearDay != mDateYearDay || mTime.year != mDateYear) {
+                mDateText = String.format("%s, %s %02d %04d", mDayNames[mTime.weekDay+1], mMonthNames[mTime.month], mTime.monthDay, mTime.year);
+                mDateWidth = mDatePaint.measureText(mDateText);
+                mDateYearDay = mTime.yearDay;
+                mDateYear = mTime.year;
+                invalidateLayers();
+                // The stored forecast already has the new day
+                showForecast();
+            }
+        }
+
+        /**
+         * Show the stored forecast for today, or nothing when the phone didn't send it
+         */
+        private void showForecast() {
+            int julianDay = Time.getJulianDay(System.currentTimeMillis(), mTime.gmtoff);
+            ForecastStore.Day day = mForecastStore.getDay(julianDay);
+            if (day == null) {
+                lastMaxTemp = null;
+                lastMinTemp = null;
+                mWeatherIconResId = -1;
+                mWeatherIconBitmap = null;
+                mWeatherIconGrayBitmap = null;
+            } else {
+                boolean metric = mForecastStore.isMetric();
+                lastMaxTemp = Utility.formatTemperature(WeatherWatchFace.this, day.maxTemp, metric);
+                lastMinTemp = Utility.formatTemperature(WeatherWatchFace.this, day.minTemp, metric);
+
+                int resId = Utility.getArtResourceForWeatherCondition(day.weatherId);
+                if (resId>=0){
+                    mWeatherIconResId = resId;
+                    int size = (int) getResources().getDimension(R.dimen.weather_icon_size);
+                    mIconCache.load(resId, size, this);
+                } else {
+                    // No art for this condition, don't leave the previous day's icon up
+                    mWeatherIconResId = -1;
+                    mWeatherIconBitmap = null;
+                    mWeatherIconGrayBitmap = null;
+                }
+            }
+            updateMaxTempWidth();
+            invalidateLayers();
+        }
+
+        /**
+         * Draw the date into the watch face
+         */
+        private void paintDate(Canvas canvas, Rect bounds) {
+            canvas.drawText(mDateText, bounds.centerX() - mDateWidth / 2, mDateYOffset, mDatePaint);
+        }
+
+        /**
+         * Writes the value as two digits, zero padded, at the offset of the buffer
+         */
+        private void putTwoDigits(char[] buffer, int offset, int value) {
+            buffer[offset] = (char) ('0' + value / 10);
+            buffer[offset + 1] = (char) ('0' + value % 10);
         }
 
         /**
@@ -307,7 +481,7 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
 
             float maxXOffset = 0;
             if (lastMaxTemp!=null){
-                maxXOffset = mTimePaint.measureText(lastMaxTemp) / 2;
+                maxXOffset = mMaxTempWidth / 2;
                 canvas.drawText(lastMaxTemp, centerX - maxXOffset, mWeatherYOffset, mMaxPaint);
             }
 
@@ -373,6 +547,8 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
                 // Update time zone in case it changed while we weren't visible.
                 mTime.clear(TimeZone.getDefault().getID());
                 mTime.setToNow();
+                mTimeMinute = -1;
+                mDateYearDay = -1;
             } else {
                 releaseGoogleApiClient();
                 unregisterReceiver();
@@ -429,18 +605,9 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
                 if (event.getType()==DataEvent.TYPE_CHANGED){
                     DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
                     String path = event.getDataItem().getUri().getPath();
-                    if (path.equals("/sunshine_weather")){
-                        lastMaxTemp = dataMap.getString("maxTemp");
-                        lastMinTemp = dataMap.getString("minTemp");
-                        int weatherId = dataMap.getInt("weatherId");
-
-                        int resId = Utility.getArtResourceForWeatherCondition(weatherId);
-                        if (resId>=0){
-                            mWeatherIconBitmap = BitmapFactory.decodeResource(getResources(), resId);
-                            int size = Double.valueOf(WeatherWatchFace.this.getResources().getDimension(R.dimen.weather_icon_size)).intValue();
-                            mWeatherIconBitmap = Bitmap.createScaledBitmap(mWeatherIconBitmap, size, size, false);
-                            initGrayBackgroundBitmap();
-                        }
+                    if (path.equals(ForecastStore.PATH)){
+                        mForecastStore.update(dataMap);
+                        showForecast();
                         invalidate();
                     }
                 }
@@ -452,21 +619,15 @@ public class WeatherWatchFace extends CanvasWatchFaceService {
 
         }
 
-        /**
-         * Generate gray bitmap from the current weather icon
-         */
-        private void initGrayBackgroundBitmap() {
-            mWeatherIconGrayBitmap = Bitmap.createBitmap(
-                    mWeatherIconBitmap.getWidth(),
-                    mWeatherIconBitmap.getHeight(),
-                    Bitmap.Config.ARGB_8888);
-            Canvas canvas = new Canvas(mWeatherIconGrayBitmap);
-            Paint grayPaint = new Paint();
-            ColorMatrix colorMatrix = new ColorMatrix();
-            colorMatrix.setSaturation(0);
-            ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
-            grayPaint.setColorFilter(filter);
-            canvas.drawBitmap(mWeatherIconBitmap, 0, 0, grayPaint);
+        @Override
+        public void onIconsLoaded(int resId, Bitmap icon, Bitmap grayIcon) {
+            if (resId != mWeatherIconResId) {
+                return;
+            }
+            mWeatherIconBitmap = icon;
+            mWeatherIconGrayBitmap = grayIcon;
+            invalidateLayers();
+            invalidate();
         }
     }
 }